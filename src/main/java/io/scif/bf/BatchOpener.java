@@ -0,0 +1,247 @@
+/*
+ * #%L
+ * SCIFIO Bio-Formats compatibility format.
+ * %%
+ * Copyright (C) 2013 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package io.scif.bf;
+
+import io.scif.FormatException;
+import io.scif.config.SCIFIOConfig;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import org.scijava.io.location.Location;
+
+/**
+ * Opens many datasets concurrently through a {@link BioFormatsFormat}.
+ * <p>
+ * Each location is checked, parsed and handed to a task along with a reader,
+ * on a pool of threads bounded by the concurrency limit. Locations are taken
+ * from the input only as threads become free, so arbitrarily large - or lazily
+ * produced - collections are processed in bounded memory. Results are passed
+ * to a callback as each location completes, in completion order.
+ * </p>
+ */
+public class BatchOpener {
+
+	// -- Fields --
+
+	private final BioFormatsFormat format;
+
+	private final int maxConcurrency;
+
+	// -- Constructor --
+
+	/**
+	 * Creates an opener processing up to {@code maxConcurrency} locations at a
+	 * time.
+	 */
+	public BatchOpener(final BioFormatsFormat format, final int maxConcurrency) {
+		if (maxConcurrency < 1) {
+			throw new IllegalArgumentException("Invalid concurrency: " +
+				maxConcurrency);
+		}
+		this.format = format;
+		this.maxConcurrency = maxConcurrency;
+	}
+
+	// -- BatchOpener API methods --
+
+	/**
+	 * Processes the given locations, returning once all of them are done.
+	 * Locations not supported by the format are reported without running the
+	 * task; failures are reported rather than aborting the batch.
+	 *
+	 * @param task work to do with each dataset, e.g. reading some planes. The
+	 *          reader is closed once the task returns.
+	 * @param results called with the result of each location, from the thread
+	 *          that processed it. If it throws, no further locations are
+	 *          started, and the exception is rethrown by this method once the
+	 *          locations already started are done.
+	 * @throws InterruptedException if interrupted while waiting; locations
+	 *           already started are still completed.
+	 */
+	public <T> void open(final Iterable<? extends Location> locations,
+		final SCIFIOConfig config, final Task<T> task,
+		final Consumer<? super Result<T>> results) throws InterruptedException
+	{
+		final Semaphore permits = new Semaphore(maxConcurrency);
+		final AtomicReference<Throwable> failure = new AtomicReference<>();
+		final AtomicInteger threads = new AtomicInteger();
+		final ExecutorService service = Executors.newFixedThreadPool(
+			maxConcurrency, r -> {
+				final Thread t = new Thread(r, "scifio-bf-batch-" + threads
+					.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			});
+		try {
+			final Iterator<? extends Location> iter = locations.iterator();
+			while (true) {
+				// NB: wait for a free slot before taking the next location.
+				permits.acquire();
+				if (failure.get() != null || !iter.hasNext()) {
+					permits.release();
+					break;
+				}
+				final Location loc = iter.next();
+				service.execute(() -> {
+					try {
+						results.accept(process(loc, config, task));
+					}
+					catch (final RuntimeException | Error e) {
+						// NB: report to the caller, rather than to the pool thread.
+						if (!failure.compareAndSet(null, e) && failure.get() != e) {
+							failure.get().addSuppressed(e);
+						}
+					}
+					finally {
+						permits.release();
+					}
+				});
+			}
+		}
+		finally {
+			// wait for the locations already started
+			permits.acquireUninterruptibly(maxConcurrency);
+			service.shutdown();
+		}
+		final Throwable t = failure.get();
+		if (t instanceof Error) throw (Error) t;
+		if (t != null) throw (RuntimeException) t;
+	}
+
+	// -- Helper methods --
+
+	private <T> Result<T> process(final Location loc, final SCIFIOConfig config,
+		final Task<T> task)
+	{
+		try {
+			final BioFormatsFormat.Checker checker =
+				(BioFormatsFormat.Checker) format.createChecker();
+			if (!checker.isFormat(loc, config)) {
+				return new Result<>(loc, false, null, null);
+			}
+			final BioFormatsFormat.Metadata meta =
+				(BioFormatsFormat.Metadata) format.createParser().parse(loc, config);
+			final BioFormatsFormat.Reader reader;
+			try {
+				reader = (BioFormatsFormat.Reader) format.createReader();
+				reader.setMetadata(meta);
+			}
+			catch (final FormatException | IOException | RuntimeException e) {
+				// NB: without a reader, nothing else closes the metadata.
+				closeQuietly(meta, e);
+				throw e;
+			}
+			try {
+				return new Result<>(loc, true, task.process(loc, reader), null);
+			}
+			finally {
+				reader.close();
+			}
+		}
+		catch (final FormatException | IOException | RuntimeException e) {
+			return new Result<>(loc, true, null, e);
+		}
+	}
+
+	/** Closes the given metadata, recording any failure on {@code cause}. */
+	private static void closeQuietly(final BioFormatsFormat.Metadata meta,
+		final Exception cause)
+	{
+		try {
+			meta.close(false);
+		}
+		catch (final IOException | RuntimeException e) {
+			cause.addSuppressed(e);
+		}
+	}
+
+	// -- Helper classes --
+
+	/** Work done with each opened dataset. */
+	public interface Task<T> {
+
+		T process(Location loc, BioFormatsFormat.Reader reader)
+			throws FormatException, IOException;
+	}
+
+	/** The outcome of processing one location. */
+	public static final class Result<T> {
+
+		private final Location location;
+
+		private final boolean supported;
+
+		private final T value;
+
+		private final Exception error;
+
+		private Result(final Location location, final boolean supported,
+			final T value, final Exception error)
+		{
+			this.location = location;
+			this.supported = supported;
+			this.value = value;
+			this.error = error;
+		}
+
+		public Location getLocation() {
+			return location;
+		}
+
+		/** @return false if no Bio-Formats reader recognized the location. */
+		public boolean isSupported() {
+			return supported;
+		}
+
+		/** @return the task's return value, or null if it did not complete. */
+		public T getValue() {
+			return value;
+		}
+
+		/** @return the error that stopped processing, or null. */
+		public Exception getError() {
+			return error;
+		}
+
+		/** @return true if the location was supported and the task completed. */
+		public boolean isSuccess() {
+			return supported && error == null;
+		}
+	}
+
+}
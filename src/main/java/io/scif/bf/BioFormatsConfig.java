@@ -0,0 +1,363 @@
+/*
+ * #%L
+ * SCIFIO Bio-Formats compatibility format.
+ * %%
+ * Copyright (C) 2013 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package io.scif.bf;
+
+import io.scif.bf.wrapper.DataHandleAdapter;
+import io.scif.config.SCIFIOConfig;
+
+import java.io.File;
+
+/**
+ * Accessors for the {@link BioFormatsFormat}-specific options that can be
+ * stored in a {@link SCIFIOConfig}.
+ * <p>
+ * All options are off (or at their conservative default) unless explicitly
+ * set, so a plain {@code SCIFIOConfig} behaves exactly as it always has.
+ * </p>
+ */
+public final class BioFormatsConfig {
+
+	// -- Constants --
+
+	/** Key for the maximum number of readers open per dataset. */
+	public static final String READER_POOL_SIZE = "bioformats.readerPoolSize";
+
+	/** Key for the directory in which initialized reader state is cached. */
+	public static final String MEMO_DIRECTORY = "bioformats.memoDirectory";
+
+	/** Key for the minimum parse time (ms) before reader state is cached. */
+	public static final String MEMO_MINIMUM_ELAPSED =
+		"bioformats.memoMinimumElapsed";
+
+	/** Key for the byte budget of the in-memory plane cache. */
+	public static final String PLANE_CACHE_SIZE = "bioformats.planeCacheSize";
+
+	/** Key for the block size used to buffer reads from data handles. */
+	public static final String HANDLE_BLOCK_SIZE = "bioformats.handleBlockSize";
+
+	/** Key for memory-mapping local files. */
+	public static final String MEMORY_MAPPED = "bioformats.memoryMapped";
+
+	/** Key for exposing pyramid levels as separate images. */
+	public static final String FLATTENED_RESOLUTIONS =
+		"bioformats.flattenedResolutions";
+
+	/** Key for the time budget (ms) of parallel format detection. */
+	public static final String DETECTION_TIMEOUT = "bioformats.detectionTimeout";
+
+	/** Key for the byte budget of released planes kept for reuse. */
+	public static final String PLANE_POOL_SIZE = "bioformats.planePoolSize";
+
+	/** Key for the number of planes read ahead of sequential access. */
+	public static final String PREFETCH_DEPTH = "bioformats.prefetchDepth";
+
+	/** Key for parsing only the metadata needed to read pixels. */
+	public static final String PIXELS_ONLY = "bioformats.pixelsOnly";
+
+	/** Key for the directory in which thumbnails are cached. */
+	public static final String THUMBNAIL_DIRECTORY =
+		"bioformats.thumbnailDirectory";
+
+	// -- Constructors --
+
+	private BioFormatsConfig() {
+		// NB: prevent instantiation of utility class.
+	}
+
+	// -- Reader pool --
+
+	/**
+	 * Sets the maximum number of independently initialized Bio-Formats readers
+	 * which may be kept open for a single dataset, allowing that many planes to
+	 * be read concurrently. Only applies to datasets on the local file system.
+	 */
+	public static SCIFIOConfig setReaderPoolSize(final SCIFIOConfig config,
+		final int size)
+	{
+		config.put(READER_POOL_SIZE, size);
+		return config;
+	}
+
+	/** @return the configured reader pool size. Defaults to 1. */
+	public static int getReaderPoolSize(final SCIFIOConfig config) {
+		return Math.max(1, intValue(config, READER_POOL_SIZE, 1));
+	}
+
+	// -- Reader state cache --
+
+	/**
+	 * Sets the directory in which the initialized state of Bio-Formats readers
+	 * is cached (see {@link loci.formats.Memoizer}). When set, opening a dataset
+	 * again restores the cached state instead of parsing the file anew. A
+	 * {@code null} directory disables the cache, which is the default.
+	 */
+	public static SCIFIOConfig setMemoDirectory(final SCIFIOConfig config,
+		final File directory)
+	{
+		config.put(MEMO_DIRECTORY, directory);
+		return config;
+	}
+
+	/** @return the reader state cache directory, or null if disabled. */
+	public static File getMemoDirectory(final SCIFIOConfig config) {
+		final Object value = config == null ? null : config.get(MEMO_DIRECTORY);
+		if (value instanceof File) return (File) value;
+		if (value instanceof String) return new File((String) value);
+		return null;
+	}
+
+	/**
+	 * Sets the minimum time, in milliseconds, that parsing a dataset must take
+	 * for its reader state to be cached. Quickly parsed datasets are not worth
+	 * the disk space.
+	 */
+	public static SCIFIOConfig setMemoMinimumElapsed(final SCIFIOConfig config,
+		final long millis)
+	{
+		config.put(MEMO_MINIMUM_ELAPSED, millis);
+		return config;
+	}
+
+	/** @return the minimum parse time for caching. Defaults to 100 ms. */
+	public static long getMemoMinimumElapsed(final SCIFIOConfig config) {
+		return longValue(config, MEMO_MINIMUM_ELAPSED, 100);
+	}
+
+	// -- Plane cache --
+
+	/**
+	 * Sets the number of bytes of decoded planes and tiles each reader may keep
+	 * in memory. Planes and tiles are evicted in least-recently-used order once
+	 * the budget is exceeded. A budget of zero, the default, disables caching.
+	 */
+	public static SCIFIOConfig setPlaneCacheSize(final SCIFIOConfig config,
+		final long bytes)
+	{
+		config.put(PLANE_CACHE_SIZE, bytes);
+		return config;
+	}
+
+	/** @return the plane cache byte budget. Defaults to 0 (disabled). */
+	public static long getPlaneCacheSize(final SCIFIOConfig config) {
+		return longValue(config, PLANE_CACHE_SIZE, 0);
+	}
+
+	// -- Plane pooling --
+
+	/**
+	 * Sets the number of bytes of released planes each reader keeps for reuse
+	 * by later leases (see {@link PlaneBufferPool}). Zero disables pooling.
+	 */
+	public static SCIFIOConfig setPlanePoolSize(final SCIFIOConfig config,
+		final long bytes)
+	{
+		config.put(PLANE_POOL_SIZE, bytes);
+		return config;
+	}
+
+	/** @return the plane pool byte budget. Defaults to 64 MiB. */
+	public static long getPlanePoolSize(final SCIFIOConfig config) {
+		return longValue(config, PLANE_POOL_SIZE, 64L << 20);
+	}
+
+	// -- Prefetching --
+
+	/**
+	 * Sets the number of planes read ahead when planes are opened
+	 * asynchronously in sequence. Zero disables prefetching.
+	 */
+	public static SCIFIOConfig setPrefetchDepth(final SCIFIOConfig config,
+		final int planes)
+	{
+		config.put(PREFETCH_DEPTH, planes);
+		return config;
+	}
+
+	/** @return the prefetch depth. Defaults to 2. */
+	public static int getPrefetchDepth(final SCIFIOConfig config) {
+		return Math.max(0, intValue(config, PREFETCH_DEPTH, 2));
+	}
+
+	// -- Thumbnail cache --
+
+	/**
+	 * Sets the directory in which thumbnails of file-based datasets are cached,
+	 * in addition to memory, so they are kept across reads of the same file.
+	 * By default thumbnails are only cached in memory.
+	 */
+	public static SCIFIOConfig setThumbnailDirectory(final SCIFIOConfig config,
+		final File directory)
+	{
+		config.put(THUMBNAIL_DIRECTORY, directory);
+		return config;
+	}
+
+	/** @return the thumbnail directory, or null if none is set. */
+	public static File getThumbnailDirectory(final SCIFIOConfig config) {
+		final Object value = config == null ? null : config.get(
+			THUMBNAIL_DIRECTORY);
+		if (value instanceof File) return (File) value;
+		if (value instanceof String) return new File((String) value);
+		return null;
+	}
+
+	// -- Handle buffering --
+
+	/**
+	 * Sets the size of the blocks in which reads from non-file locations are
+	 * buffered (see {@link DataHandleAdapter}).
+	 */
+	public static SCIFIOConfig setHandleBlockSize(final SCIFIOConfig config,
+		final int bytes)
+	{
+		config.put(HANDLE_BLOCK_SIZE, bytes);
+		return config;
+	}
+
+	/**
+	 * @return the handle block size, at least
+	 *         {@link DataHandleAdapter#MIN_BLOCK_SIZE}. Defaults to
+	 *         {@link DataHandleAdapter#DEFAULT_BLOCK_SIZE}.
+	 */
+	public static int getHandleBlockSize(final SCIFIOConfig config) {
+		return Math.max(DataHandleAdapter.MIN_BLOCK_SIZE, intValue(config,
+			HANDLE_BLOCK_SIZE, DataHandleAdapter.DEFAULT_BLOCK_SIZE));
+	}
+
+	/**
+	 * Sets whether local files are read through a memory-mapped view instead of
+	 * by Bio-Formats' own file handles. Mapped files share the operating
+	 * system's page cache across processes and make seeks free, which benefits
+	 * formats with random access patterns such as tiled TIFF variants.
+	 * <p>
+	 * Only files of single-file datasets are mapped; the files of multi-file
+	 * datasets, and all files during format detection, are read as usual.
+	 * NB: a mapped file is opened by name only, like non-file locations, so
+	 * neither reader state caching nor reader pooling apply to it.
+	 * </p>
+	 */
+	public static SCIFIOConfig setMemoryMapped(final SCIFIOConfig config,
+		final boolean mapped)
+	{
+		config.put(MEMORY_MAPPED, mapped);
+		return config;
+	}
+
+	/** @return true iff local files are memory-mapped. Defaults to false. */
+	public static boolean isMemoryMapped(final SCIFIOConfig config) {
+		final Object value = config == null ? null : config.get(MEMORY_MAPPED);
+		return Boolean.TRUE.equals(value);
+	}
+
+	// -- Resolutions --
+
+	/**
+	 * Sets whether the resolution levels of pyramidal images are exposed as
+	 * separate images (Bio-Formats' default), or as levels of a single image,
+	 * addressable through {@link BioFormatsFormat.Metadata#getResolution} and
+	 * {@link BioFormatsFormat.Reader#openPlane(int, int, long,
+	 * net.imglib2.Interval, SCIFIOConfig)}.
+	 */
+	public static SCIFIOConfig setFlattenedResolutions(
+		final SCIFIOConfig config, final boolean flattened)
+	{
+		config.put(FLATTENED_RESOLUTIONS, flattened);
+		return config;
+	}
+
+	/** @return true iff resolutions are flattened. Defaults to true. */
+	public static boolean isFlattenedResolutions(final SCIFIOConfig config) {
+		final Object value = config == null ? null : config.get(
+			FLATTENED_RESOLUTIONS);
+		return !Boolean.FALSE.equals(value);
+	}
+
+	// -- Metadata store --
+
+	/**
+	 * Sets whether datasets are parsed into a lightweight metadata store (see
+	 * {@link PixelsOnlyMetadata}) rather than a full OME-XML model. Dimensions,
+	 * pixel types, physical sizes and channel colors are still available, but
+	 * no OME-XML metadata is produced. Off by default.
+	 */
+	public static SCIFIOConfig setPixelsOnly(final SCIFIOConfig config,
+		final boolean pixelsOnly)
+	{
+		config.put(PIXELS_ONLY, pixelsOnly);
+		return config;
+	}
+
+	/** @return true if the lightweight metadata store is enabled. */
+	public static boolean isPixelsOnly(final SCIFIOConfig config) {
+		return config != null && Boolean.TRUE.equals(config.get(PIXELS_ONLY));
+	}
+
+	// -- Format detection --
+
+	/**
+	 * Enables parallel format detection with the given time budget, in
+	 * milliseconds. The readers are asked in parallel rather than one after
+	 * another, those matching a file's suffix first, and detection gives up
+	 * once the budget is spent. Each reader then opens the file itself, rather
+	 * than all readers sharing one open handle. A budget of zero, the default,
+	 * means sequential detection without a time limit.
+	 */
+	public static SCIFIOConfig setDetectionTimeout(final SCIFIOConfig config,
+		final long millis)
+	{
+		config.put(DETECTION_TIMEOUT, millis);
+		return config;
+	}
+
+	/** @return the parallel detection budget, or 0 if disabled. */
+	public static long getDetectionTimeout(final SCIFIOConfig config) {
+		return Math.max(0, longValue(config, DETECTION_TIMEOUT, 0));
+	}
+
+	// -- Helper methods --
+
+	private static long longValue(final SCIFIOConfig config, final String key,
+		final long defaultValue)
+	{
+		final Object value = config == null ? null : config.get(key);
+		return value instanceof Number ? ((Number) value).longValue()
+			: defaultValue;
+	}
+
+	private static int intValue(final SCIFIOConfig config, final String key,
+		final int defaultValue)
+	{
+		final Object value = config == null ? null : config.get(key);
+		return value instanceof Number ? ((Number) value).intValue()
+			: defaultValue;
+	}
+
+}
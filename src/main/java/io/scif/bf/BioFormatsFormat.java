@@ -37,7 +37,6 @@ import io.scif.AbstractParser;
 import io.scif.ByteArrayPlane;
 import io.scif.ByteArrayReader;
 import io.scif.DefaultImageMetadata;
-import io.scif.DefaultMetaTable;
 import io.scif.Format;
 import io.scif.FormatException;
 import io.scif.HasColorTable;
@@ -45,15 +44,24 @@ import io.scif.HasFormat;
 import io.scif.ImageMetadata;
 import io.scif.MetaTable;
 import io.scif.bf.wrapper.DataHandleAdapter;
+import io.scif.bf.wrapper.IdMapRegistration;
 import io.scif.config.SCIFIOConfig;
 import io.scif.ome.services.OMEXMLService;
 import io.scif.util.FormatTools;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
-import java.util.WeakHashMap;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
 
 import net.imagej.axis.Axes;
 import net.imagej.axis.AxisType;
@@ -77,6 +85,8 @@ import org.scijava.util.LongArray;
 import loci.formats.ClassList;
 import loci.formats.IFormatReader;
 import loci.formats.ImageReader;
+import loci.formats.Memoizer;
+import loci.formats.meta.DummyMetadata;
 import loci.formats.meta.MetadataRetrieve;
 import loci.formats.meta.MetadataStore;
 import loci.formats.ome.OMEXMLMetadataImpl;
@@ -120,15 +130,16 @@ public class BioFormatsFormat extends AbstractFormat {
 
 	// -- Fields --
 
+	/** Reader classes added through {@link #addReader(Class)}. */
+	private final List<Class<? extends IFormatReader>> addedClasses =
+		new CopyOnWriteArrayList<>();
+
 	/**
-	 * List of Bio-Formats reader classes, excluding the {@link #DO_NOT_CONVERT}
-	 * blacklist.
+	 * The current reader classes and everything derived from them. Replaced as a
+	 * whole whenever the reader classes change, so readers never see a mix of
+	 * old and new state.
 	 */
-	private ClassList<IFormatReader> readerClasses;
-
-	private ImageReader cachedReader;
-
-	private int cachedReaderHash;
+	private volatile ReaderSnapshot snapshot;
 
 	// -- Constructors --
 
@@ -137,7 +148,7 @@ public class BioFormatsFormat extends AbstractFormat {
 	 * readers.txt.
 	 */
 	public BioFormatsFormat() {
-		cacheReaderClasses();
+		refreshSnapshot();
 	}
 
 	// -- BioFormatsFormat API Methods --
@@ -145,8 +156,7 @@ public class BioFormatsFormat extends AbstractFormat {
 	/** Creates a new Bio-Formats {@link ImageReader}. */
 	public ImageReader createImageReader() {
 		// Check for updated reader classes
-		cacheReaderClasses();
-		return new ImageReader(readerClasses);
+		return new ImageReader(refreshSnapshot().readerClasses);
 	}
 
 	/**
@@ -155,15 +165,24 @@ public class BioFormatsFormat extends AbstractFormat {
 	 * necessary.
 	 */
 	public ImageReader getCachedImageReader() {
-		if (cacheReaderClasses() || cachedReader == null) {
-			cachedReader = createImageReader();
-		}
-		return cachedReader;
+		return snapshot().cachedReader;
+	}
+
+	/**
+	 * Gets the suffix index over the readers of the
+	 * {@link #getCachedImageReader() cached ImageReader}, which is regenerated
+	 * along with it.
+	 */
+	public ReaderIndex getReaderIndex() {
+		return snapshot().index;
 	}
 
 	/** Adds the given reader class to this format's supported reader list. */
-	public void addReader(final Class<IFormatReader> readerClass) {
-		readerClasses.addClass(readerClass);
+	public synchronized void addReader(final Class<IFormatReader> readerClass) {
+		addedClasses.add(readerClass);
+		final ReaderSnapshot current = snapshot();
+		snapshot = new ReaderSnapshot(current.source, current.sourceHash,
+			current.source.getClasses(), addedClasses);
 	}
 
 	// -- Format API Methods --
@@ -174,10 +193,13 @@ public class BioFormatsFormat extends AbstractFormat {
 		return null;
 	}
 
+	/**
+	 * NB: the suffixes may change when reader classes are added, but the
+	 * returned array is shared and must not be modified.
+	 */
 	@Override
 	public String[] getSuffixes() {
-		// NB: the suffixes may change, so this array must always be re-generated.
-		return getCachedImageReader().getSuffixes();
+		return snapshot().suffixes;
 	}
 
 	// -- Nested Classes --
@@ -193,43 +215,181 @@ public class BioFormatsFormat extends AbstractFormat {
 
 		private IFormatReader reader;
 
+		private ReaderPool readerPool;
+
+		/** Id map entry through which the reader accesses a non-file source. */
+		private IdMapRegistration idMapRegistration;
+
 		private String formatName;
 
-		private final Map<String, ColorTable> colorTables16 = new WeakHashMap<>();
+		/**
+		 * Per-series image metadata, converted from the reader on first access.
+		 * Null until {@link #populateImageMetadata()} is called.
+		 */
+		private AtomicReferenceArray<ImageMetadata> seriesMetadata;
+
+		/** Image metadata of sub-resolution levels, keyed by series and level. */
+		private final Map<Long, ImageMetadata> resolutionMetadata =
+			new ConcurrentHashMap<>();
 
-		private final Map<String, ColorTable> colorTables8 = new WeakHashMap<>();
+		/** Per-series optimal tile width and height, looked up on first access. */
+		private AtomicReferenceArray<int[]> tileSizes;
 
-		private final Map<MetadataRetrieve, ColorTable> colorTableXML =
-			new WeakHashMap<>();
+		/** Per-series color tables, built on first access. */
+		private AtomicReferenceArray<ColorTables> colorTables;
 
 		// -- BioFormatsFormatMetadata methods --
 
 		// -- Getters and Setters --
 
+		/**
+		 * Gets the Bio-Formats reader used to parse this dataset. NB: the reader
+		 * is not thread-safe; to access pixel data concurrently, borrow readers
+		 * from the {@link #getReaderPool() reader pool} instead.
+		 */
 		public IFormatReader getReader() {
 			return reader;
 		}
 
 		public void setReader(final IFormatReader reader) {
 			this.reader = reader;
+			readerPool = reader == null ? null : new ReaderPool(reader);
 			formatName = null;
 		}
 
+		/** Gets the pool of readers available for reading this dataset. */
+		public ReaderPool getReaderPool() {
+			return readerPool;
+		}
+
+		/**
+		 * Sets the pool of readers available for reading this dataset. The pool's
+		 * primary reader must be the {@link #getReader() parsing reader}.
+		 */
+		public void setReaderPool(final ReaderPool readerPool) {
+			if (readerPool.getPrimary() != reader) {
+				throw new IllegalArgumentException(
+					"Reader pool does not belong to this metadata");
+			}
+			this.readerPool = readerPool;
+		}
+
+		/**
+		 * Sets the id map entry used by the reader, which is removed when this
+		 * metadata is closed. Any previous entry is removed right away.
+		 */
+		void setIdMapRegistration(final IdMapRegistration registration) {
+			if (idMapRegistration != null) idMapRegistration.close();
+			idMapRegistration = registration;
+		}
+
+		/**
+		 * Gets the number of resolution levels of the given image. Unless
+		 * {@link BioFormatsConfig#setFlattenedResolutions flattening} is disabled,
+		 * Bio-Formats exposes each level as an image of its own, and this is 1.
+		 */
+		public int getResolutionCount(final int imageIndex) {
+			final IFormatReader r = borrowPrimary();
+			try {
+				r.setSeries(imageIndex);
+				return r.getResolutionCount();
+			}
+			finally {
+				readerPool.release(r);
+			}
+		}
+
+		/**
+		 * Gets the image metadata of the given resolution level of an image.
+		 * Level 0 is the full resolution image, i.e. {@link #get(int)}; higher
+		 * levels are progressively smaller.
+		 */
+		public ImageMetadata getResolution(final int imageIndex,
+			final int resolution)
+		{
+			if (resolution == 0) return get(imageIndex);
+			final Long key = ((long) imageIndex << 32) | resolution;
+			final ImageMetadata imgMeta = resolutionMetadata.get(key);
+			if (imgMeta != null) return imgMeta;
+			final IFormatReader r = borrowPrimary();
+			try {
+				return resolutionMetadata.computeIfAbsent(key, k -> convertMetadata(
+					this, r, imageIndex, resolution));
+			}
+			finally {
+				readerPool.release(r);
+			}
+		}
+
+		/**
+		 * Gets the width of the tiles in which the given image is most
+		 * efficiently read, i.e. the width of its compressed tiles or strips.
+		 */
+		public int getOptimalTileWidth(final int imageIndex) {
+			return tileSize(imageIndex)[0];
+		}
+
+		/**
+		 * Gets the height of the tiles in which the given image is most
+		 * efficiently read, i.e. the height of its compressed tiles or strips.
+		 */
+		public int getOptimalTileHeight(final int imageIndex) {
+			return tileSize(imageIndex)[1];
+		}
+
 		// -- Metadata API Methods --
 
 		@Override
 		public void populateImageMetadata() {
-			for (int s = 0; s < reader.getSeriesCount(); s++) {
-				add(convertMetadata(reader, s));
-			}
+			// NB: series are converted lazily, see get(int). Converting them all
+			// up front is prohibitively expensive for datasets such as plates with
+			// thousands of fields.
+			seriesMetadata = new AtomicReferenceArray<>(reader.getSeriesCount());
+			tileSizes = new AtomicReferenceArray<>(reader.getSeriesCount());
+			colorTables = new AtomicReferenceArray<>(reader.getSeriesCount());
 			formatName = super.getFormatName();
 			formatName += " - Bio-Formats reader used: " + reader.getFormat();
 		}
 
+		@Override
+		public ImageMetadata get(final int imageIndex) {
+			if (seriesMetadata == null) return super.get(imageIndex);
+			final ImageMetadata imgMeta = seriesMetadata.get(imageIndex);
+			return imgMeta == null ? convertSeries(imageIndex) : imgMeta;
+		}
+
+		@Override
+		public List<ImageMetadata> getAll() {
+			if (seriesMetadata == null) return super.getAll();
+			final List<ImageMetadata> all = new ArrayList<>(seriesMetadata
+				.length());
+			for (int s = 0; s < seriesMetadata.length(); s++) {
+				all.add(get(s));
+			}
+			return all;
+		}
+
+		@Override
+		public int getImageCount() {
+			return seriesMetadata == null ? super.getImageCount() : seriesMetadata
+				.length();
+		}
+
 		@Override
 		public void close(final boolean fileOnly) throws IOException {
 			super.close(fileOnly);
+			if (!fileOnly) {
+				seriesMetadata = null;
+				resolutionMetadata.clear();
+				tileSizes = null;
+				colorTables = null;
+			}
+			if (readerPool != null) readerPool.close();
 			if (reader != null) reader.close(fileOnly);
+			if (!fileOnly && idMapRegistration != null) {
+				idMapRegistration.close();
+				idMapRegistration = null;
+			}
 		}
 
 		// -- HasFormat methods --
@@ -242,73 +402,160 @@ public class BioFormatsFormat extends AbstractFormat {
 		// -- HasColorTable methods --
 
 		@Override
-		public ColorTable getColorTable(int imageIndex, final long planeIndex) {
-			if (imageIndex >= reader.getSeriesCount()) imageIndex = 0;
+		public ColorTable getColorTable(final int imageIndex,
+			final long planeIndex)
+		{
+			IFormatReader r = null;
+			try {
+				r = readerPool.borrow();
+				return getColorTable(r, imageIndex, planeIndex);
+			}
+			catch (final FormatException | IOException e) {
+				log().error(e);
+				return null;
+			}
+			finally {
+				readerPool.release(r);
+			}
+		}
 
-			final String key = getKey(reader, imageIndex);
+		/**
+		 * As {@link #getColorTable(int, long)}, using the given reader - which
+		 * must be borrowed from this metadata's {@link #getReaderPool() pool} - to
+		 * look up the table.
+		 */
+		public ColorTable getColorTable(final IFormatReader reader,
+			int imageIndex, final long planeIndex)
+		{
+			if (imageIndex >= reader.getSeriesCount()) imageIndex = 0;
 
-			// return early if we have the color table cached
-			final ColorTable ct16 = colorTables16.get(key);
-			final ColorTable ct8 = colorTables8.get(key);
-			if (ct16 != null || ct8 != null) {
-				return ct16 == null ? ct8 : ct16;
+			final AtomicReferenceArray<ColorTables> cache = colorTables;
+			ColorTables tables = cache == null ? null : cache.get(imageIndex);
+			if (tables == null) {
+				tables = buildColorTables(reader, imageIndex);
+				if (cache != null && !cache.compareAndSet(imageIndex, null, tables)) {
+					tables = cache.get(imageIndex);
+				}
 			}
-			final int oldIndex = reader.getSeries();
-			reader.setSeries(imageIndex);
+			if (tables.lut != null) return tables.lut;
 
-			// See if the reader has a ColorTable attached already
+			final long channelIndex = FormatTools.getNonPlanarAxisPosition(this,
+				imageIndex, planeIndex, Axes.CHANNEL);
+			return channelIndex >= 0 && channelIndex < tables.channels.length
+				? tables.channels[(int) channelIndex] : null;
+		}
+
+		/**
+		 * Converts the given series of the primary reader, which holds the full
+		 * metadata store, unless another thread beat us to it.
+		 */
+		private ImageMetadata convertSeries(final int s) {
+			final IFormatReader r = borrowPrimary();
 			try {
-				// try getting the 16 bit one
-				final short[][] table16 = reader.get16BitLookupTable();
-				if (table16 != null) {
-					reader.setSeries(oldIndex);
-					return colorTables16.put(key, new ColorTable16(table16));
-				}
-				// try getting 8bit color table
-				final byte[][] table8 = reader.get8BitLookupTable();
-				if (table8 != null) {
-					reader.setSeries(oldIndex);
-					return colorTables8.put(key, new ColorTable8(table8));
+				ImageMetadata imgMeta = seriesMetadata.get(s);
+				if (imgMeta == null) {
+					imgMeta = convertMetadata(this, r, s);
+					seriesMetadata.set(s, imgMeta);
 				}
+				return imgMeta;
 			}
-			catch (loci.formats.FormatException | IOException e) {
-				log().error(e);
+			finally {
+				readerPool.release(r);
 			}
+		}
 
-			ColorTable ct = null;
-			// Check the metadata to see if there is a Color entry in the XML
-			final MetadataRetrieve retrieve = omexmlService.asRetrieve(reader
-				.getMetadataStore());
-			if (retrieve != null) {
-				ct = colorTableXML.get(retrieve);
-				if (ct == null) {
-					final long channelIndex = FormatTools.getNonPlanarAxisPosition(this,
-						imageIndex, planeIndex, Axes.CHANNEL);
-					if (channelIndex >= 0 && retrieve.getChannelCount(imageIndex) > 0 &&
-						channelIndex < retrieve.getChannelCount(imageIndex))
-					{
-						final Color channelColor = retrieve.getChannelColor(imageIndex,
-							(int) channelIndex);
-						final boolean eightBit = reader
-							.getPixelType() == FormatTools.UINT8 || reader
-								.getPixelType() == FormatTools.INT8;
-						ct = makeColorTable(channelColor, eightBit);
-						colorTableXML.put(retrieve, ct);
-					}
-				}
+		/** Gets the optimal tile width and height of the given series. */
+		private int[] tileSize(final int s) {
+			int[] size = tileSizes.get(s);
+			if (size != null) return size;
+			final IFormatReader r = borrowPrimary();
+			try {
+				r.setSeries(s);
+				size = new int[] { r.getOptimalTileWidth(), r.getOptimalTileHeight() };
+				tileSizes.set(s, size);
+				return size;
 			}
+			finally {
+				readerPool.release(r);
+			}
+		}
 
-			return ct;
+		/**
+		 * Applies the given lookup to the primary reader, borrowed for the
+		 * duration of the call.
+		 */
+		private <T> T withPrimary(final Function<IFormatReader, T> lookup) {
+			final ReaderPool pool = readerPool;
+			final IFormatReader r = borrowPrimary();
+			try {
+				return lookup.apply(r);
+			}
+			finally {
+				pool.release(r);
+			}
 		}
 
-		private String getKey(final IFormatReader r, final int imageIndex) {
-			return "r" + r.hashCode() + "img" + imageIndex;
+		/** Borrows the primary reader for a metadata lookup. */
+		private IFormatReader borrowPrimary() {
+			try {
+				return readerPool.borrowPrimary();
+			}
+			catch (final IOException e) {
+				throw new IllegalStateException(
+					"Failed to access the Bio-Formats reader", e);
+			}
+		}
+
+		/**
+		 * Builds the color tables of the given series: the reader's lookup table
+		 * if it has one, else one table per channel from the channel colors in
+		 * the metadata store.
+		 */
+		private ColorTables buildColorTables(final IFormatReader r,
+			final int imageIndex)
+		{
+			final int oldIndex = r.getSeries();
+			r.setSeries(imageIndex);
+			try {
+				// See if the reader has a ColorTable attached already
+				try {
+					final short[][] table16 = r.get16BitLookupTable();
+					if (table16 != null) {
+						return new ColorTables(new ColorTable16(table16), null);
+					}
+					final byte[][] table8 = r.get8BitLookupTable();
+					if (table8 != null) {
+						return new ColorTables(new ColorTable8(table8), null);
+					}
+				}
+				catch (loci.formats.FormatException | IOException e) {
+					log().error(e);
+				}
+
+				// Check the metadata for a Color entry per channel in the XML
+				// NB: only the primary reader carries the full metadata store.
+				final MetadataRetrieve retrieve = omexmlService.asRetrieve(reader
+					.getMetadataStore());
+				final int channelCount = retrieve == null ? 0 : retrieve
+					.getChannelCount(imageIndex);
+				final ColorTable[] channels = new ColorTable[channelCount];
+				final boolean eightBit = r.getPixelType() == FormatTools.UINT8 || r
+					.getPixelType() == FormatTools.INT8;
+				for (int c = 0; c < channelCount; c++) {
+					channels[c] = makeColorTable(retrieve.getChannelColor(imageIndex, c),
+						eightBit);
+				}
+				return new ColorTables(null, channels);
+			}
+			finally {
+				r.setSeries(oldIndex);
+			}
 		}
 
 		/**
 		 * Turns a {@link Color} into a {@link ColorTable}. If {@code eightBit} is
 		 * true, then a {@link ColorTable8} will be made - otherwise a
-		 * {@link ColorTable16}.
+		 * {@link RampColorTable}.
 		 */
 		private ColorTable makeColorTable(final Color color,
 			final boolean eightBit)
@@ -334,18 +581,9 @@ public class BioFormatsFormat extends AbstractFormat {
 				lut = new ColorTable8(r, g, b);
 			}
 			else {
-				// Make a 16-bit color table. Since the Color object is 8-bit, we
-				// have to chunk it across the 16-bit lut.
-				final short[] r = new short[65536];
-				final short[] g = new short[65536];
-				final short[] b = new short[65536];
-				for (int i = 0; i < lutLength; i++) {
-					final int index = i * (65536 / 256);
-					r[index] = (short) ((i * red / lutDivisor) << 8);
-					g[index] = (short) ((i * green / lutDivisor) << 8);
-					b[index] = (short) ((i * blue / lutDivisor) << 8);
-				}
-				lut = new ColorTable16(r, g, b);
+				// Make a 16-bit color table, computing its entries on lookup rather
+				// than storing 65536 of them per component.
+				lut = new RampColorTable(red, green, blue);
 			}
 			return lut;
 		}
@@ -364,31 +602,71 @@ public class BioFormatsFormat extends AbstractFormat {
 		@Override
 		public boolean isFormat(final Location loc) {
 			if (!realSource(loc)) return false;
-			return getCachedImageReader(this).isThisType(loc.getName());
+			return getReaderIndex(this).isThisType(loc.getName(), true);
 		}
 
 		@Override
 		public boolean isFormat(final Location loc, final SCIFIOConfig config) {
+			final DataHandle<Location> handle;
 			try {
-				DataHandle<Location> handle = handles.create(loc);
-				if (handle == null || !handle.exists() || !realSource(loc)) {
-					return false;
-				}
-				if (loc instanceof FileLocation) {
-					// shortcut for FileLocations
-					return getCachedImageReader(this).isThisType(((FileLocation) loc)
-						.getFile().getAbsolutePath(), config.checkerIsOpen());
-				}
-				loci.common.Location.getIdMap().put(loc.getName(),
-					new DataHandleAdapter(handle));
+				handle = handles.create(loc);
 			}
 			catch (final IOException exc) {
 				log.error("Failed to create handle for location " + loc.toString(),
 					exc);
 				return false;
 			}
-			return getCachedImageReader(this).isThisType(loc.getName(), config
-				.checkerIsOpen());
+			if (handle == null) return false;
+			final boolean isFile = loc instanceof FileLocation;
+			IdMapRegistration registration = null;
+			try {
+				if (!handle.exists()) return false;
+				// NB: the stream can serve only one reader at a time, so
+				// time-bounded detection instead lets each reader open the source.
+				final boolean probe = config.checkerIsOpen() && BioFormatsConfig
+					.getDetectionTimeout(config) <= 0;
+				// shortcut for FileLocations
+				final String path = isFile ? ((FileLocation) loc).getFile()
+					.getAbsolutePath() : loc.getName();
+				if (!probe) {
+					// NB: the source is not read here, so only check that it is
+					// readable, without filling a whole block.
+					handle.seek(0);
+					if (handle.read() < 0) return false;
+					return isThisType(loc, path, config);
+				}
+
+				// NB: the source is opened only once. Reading its first byte fills
+				// the adapter's first block, which then serves as the header probe
+				// for all readers; readers needing more read on from the same handle.
+				// It is never memory-mapped, as only its header is read.
+				final DataHandleAdapter stream = new DataHandleAdapter(handle,
+					BioFormatsConfig.getHandleBlockSize(config));
+				stream.seek(0);
+				if (stream.read() < 0) return false;
+
+				final String id;
+				if (isFile) id = path;
+				else {
+					registration = new IdMapRegistration(loc.getName(), stream);
+					id = registration.getId();
+				}
+				return getReaderIndex(this).isThisType(id, stream);
+			}
+			catch (final InterruptedIOException exc) {
+				// NB: readers which never answer may be stuck on this source.
+				log.warn("Format detection of " + loc.toString() + " incomplete: " +
+					exc.getMessage());
+				return false;
+			}
+			catch (final IOException exc) {
+				log.error("Failed to read location " + loc.toString(), exc);
+				return false;
+			}
+			finally {
+				if (registration != null) registration.close();
+				closeQuietly(handle);
+			}
 		}
 
 		@Override
@@ -396,7 +674,7 @@ public class BioFormatsFormat extends AbstractFormat {
 			throws IOException
 		{
 			if (!realSource(handle)) return false;
-			loci.common.Location.getIdMap().put(handle.get().getName(), handle);
+			// NB: stream detection only reads from the stream, never by id.
 			return getCachedImageReader(this).isThisType(new DataHandleAdapter(
 				handle));
 		}
@@ -406,6 +684,38 @@ public class BioFormatsFormat extends AbstractFormat {
 			return false;
 		}
 
+		/**
+		 * Asks the Bio-Formats readers whether they can handle the given id,
+		 * in parallel if {@link BioFormatsConfig#setDetectionTimeout enabled}.
+		 *
+		 * @throws InterruptedIOException if parallel detection timed out
+		 *           without an answer.
+		 */
+		private boolean isThisType(final Location loc, final String id,
+			final SCIFIOConfig config) throws InterruptedIOException
+		{
+			final long timeout = BioFormatsConfig.getDetectionTimeout(config);
+			final boolean open = config.checkerIsOpen();
+			final ReaderIndex index = getReaderIndex(this);
+			if (timeout <= 0) return index.isThisType(id, open);
+			if (!open || loc instanceof FileLocation) {
+				return index.isThisType(id, open, timeout);
+			}
+			// NB: Bio-Formats' id map is thread-local, so each detection thread
+			// maps its own handle to the source while asking a reader.
+			final int blockSize = BioFormatsConfig.getHandleBlockSize(config);
+			return index.isThisType(id, reader -> {
+				try (final DataHandle<Location> handle = handles.create(loc)) {
+					if (handle == null) return false;
+					try (final IdMapRegistration registration = new IdMapRegistration(
+						loc.getName(), new DataHandleAdapter(handle, blockSize)))
+					{
+						return reader.isThisType(registration.getId(), true);
+					}
+				}
+			}, timeout);
+		}
+
 		/**
 		 * @return true iff the given name corresponds to a non-virtual source
 		 */
@@ -433,6 +743,15 @@ public class BioFormatsFormat extends AbstractFormat {
 			return getCachedImageReader(this).isThisType(block);
 		}
 
+		private void closeQuietly(final DataHandle<Location> handle) {
+			try {
+				handle.close();
+			}
+			catch (final IOException exc) {
+				log.debug(exc);
+			}
+		}
+
 	}
 
 	public static class Parser extends AbstractParser<Metadata> {
@@ -445,107 +764,972 @@ public class BioFormatsFormat extends AbstractFormat {
 			FormatException
 		{
 			try {
-				final ImageReader reader = createImageReader(this);
+				// NB: memory-mapped files are read through a DataHandleAdapter, like
+				// non-file locations, rather than by Bio-Formats itself.
+				final ImageReader imageReader = createImageReader(this);
+				final boolean isFile = stream.get() instanceof FileLocation &&
+					!isMemoryMapped(imageReader, (FileLocation) stream.get(), config);
+				// NB: memoization is keyed on the file path, so it is only possible
+				// for datasets on the local file system.
+				final IFormatReader reader = isFile ? memoize(imageReader, config)
+					: imageReader;
 				meta.setReader(reader);
 
-				final MetadataStore store = new OMEXMLMetadataImpl();
+				final int poolSize = BioFormatsConfig.getReaderPoolSize(config);
+
+				final MetadataStore store = BioFormatsConfig.isPixelsOnly(config)
+					? new PixelsOnlyMetadata() : new OMEXMLMetadataImpl();
 				reader.setMetadataStore(store);
 				reader.setOriginalMetadataPopulated(config
 					.parserIsSaveOriginalMetadata());
 				reader.setMetadataFiltered(config.parserIsFiltered());
 				reader.setGroupFiles(config.groupableIsGroupFiles());
+				reader.setFlattenedResolutions(BioFormatsConfig
+					.isFlattenedResolutions(config));
 
-				if (stream.get() instanceof FileLocation) {
+				if (isFile) {
 					// short-cut for file-locations
-					reader.setId(((FileLocation) stream.get()).getFile()
-						.getAbsolutePath());
+					final String id = ((FileLocation) stream.get()).getFile()
+						.getAbsolutePath();
+					reader.setId(id);
+					if (poolSize > 1) {
+						meta.setReaderPool(new ReaderPool(reader, () -> openReader(id,
+							config), poolSize));
+					}
 				}
 				else {
 					// fall-back: we try to map the datahandle directly
-					final DataHandleAdapter value = new DataHandleAdapter(stream);
-					loci.common.Location.getIdMap().put(stream.get().getName(), value);
-					reader.setId(stream.get().getName());
+					final IdMapRegistration registration = new IdMapRegistration(stream
+						.get().getName(), createAdapter(stream, config));
+					meta.setIdMapRegistration(registration);
+					boolean initialized = false;
+					try {
+						reader.setId(registration.getId());
+						initialized = true;
+					}
+					finally {
+						// NB: a failed parse leaves the metadata unclosed, so drop the
+						// id map entry, and with it the adapter, right away.
+						if (!initialized) meta.setIdMapRegistration(null);
+					}
 				}
 
-				meta.setTable(new DefaultMetaTable(reader.getGlobalMetadata()));
+				// NB: Bio-Formats builds a copy of its metadata on each call, so
+				// leave it to the first access of the table.
+				meta.setTable(new LazyMetaTable(() -> meta.withPrimary(
+					IFormatReader::getGlobalMetadata)));
 			}
 			catch (final loci.formats.FormatException e) {
 				throw new FormatException(e);
 			}
 		}
+
+		// -- Helper methods --
+
+		/**
+		 * @return true iff the given file is to be read through a memory-mapped
+		 *         view. Only single-file datasets are mapped, since a mapped file
+		 *         is opened by name only and its companion files would not be
+		 *         found.
+		 */
+		private boolean isMemoryMapped(final ImageReader reader,
+			final FileLocation loc, final SCIFIOConfig config)
+			throws loci.formats.FormatException, IOException
+		{
+			if (!BioFormatsConfig.isMemoryMapped(config)) return false;
+			return reader.isSingleFile(loc.getFile().getAbsolutePath());
+		}
+
+		/**
+		 * Opens an additional reader on the given file, for use in a
+		 * {@link ReaderPool}. Such readers only serve pixel data, so they skip the
+		 * OME-XML metadata store and original metadata.
+		 */
+		private IFormatReader openReader(final String id,
+			final SCIFIOConfig config) throws loci.formats.FormatException,
+			IOException
+		{
+			final IFormatReader reader = memoize(createImageReader(this), config);
+			reader.setOriginalMetadataPopulated(false);
+			reader.setMetadataFiltered(config.parserIsFiltered());
+			reader.setGroupFiles(config.groupableIsGroupFiles());
+			reader.setFlattenedResolutions(BioFormatsConfig.isFlattenedResolutions(
+				config));
+			reader.setId(id);
+			return reader;
+		}
+
+		/**
+		 * Wraps the given reader in a {@link Memoizer} if a memo directory is
+		 * configured, so its initialized state is restored from disk instead of
+		 * being parsed again. Stale memo files (e.g. older than the dataset) are
+		 * detected and regenerated by the {@code Memoizer} itself.
+		 */
+		private IFormatReader memoize(final IFormatReader reader,
+			final SCIFIOConfig config)
+		{
+			final File memoDir = BioFormatsConfig.getMemoDirectory(config);
+			if (memoDir == null) return reader;
+			return new Memoizer(reader, BioFormatsConfig.getMemoMinimumElapsed(
+				config), memoDir);
+		}
 	}
 
 	public static class Reader extends ByteArrayReader<Metadata> {
 
-		// -- Reader API Methods --
+		// -- Constants --
 
-		@Override
-		public ByteArrayPlane openPlane(final int imageIndex, final long planeIndex,
-			final ByteArrayPlane plane, final Interval bounds,
+		/** Maximum number of bytes read per openBytes call into large planes. */
+		private static final int CHUNK_BYTES = 64 << 20;
+
+		// -- Fields --
+
+		private PlaneCache planeCache;
+
+		/** The metadata whose planes are held in {@link #planeCache}. */
+		private Metadata planeCacheMeta;
+
+		private ThumbnailCache thumbnailCache;
+
+		/** The metadata whose thumbnails are held in {@link #thumbnailCache}. */
+		private Metadata thumbnailCacheMeta;
+
+		/** The directory {@link #thumbnailCache} writes to, or null. */
+		private File thumbnailCacheDirectory;
+
+		private PlaneBufferPool planePool;
+
+		/**
+		 * Plane reused to read the raw bytes of {@link #openPrimitivePlane}, or
+		 * null while in use.
+		 */
+		private ByteArrayPlane scratchPlane;
+
+		private PlanePrefetcher prefetcher;
+
+		/** The metadata whose planes {@link #prefetcher} reads. */
+		private Metadata prefetcherMeta;
+
+		// -- BioFormatsFormat.Reader API Methods --
+
+		/**
+		 * Gets the cache of decoded planes, or null if plane caching is not
+		 * enabled (see {@link BioFormatsConfig#setPlaneCacheSize}).
+		 */
+		public synchronized PlaneCache getPlaneCache() {
+			return planeCacheMeta == getMetadata() ? planeCache : null;
+		}
+
+		/**
+		 * Gets the pool of released planes, or null if no plane has been leased
+		 * yet.
+		 */
+		public synchronized PlaneBufferPool getPlaneBufferPool() {
+			return planePool;
+		}
+
+		/**
+		 * Reads the given region of a plane into a plane leased from this
+		 * reader's {@link PlaneBufferPool}, which is sized by
+		 * {@link BioFormatsConfig#setPlanePoolSize}. Pass the plane to
+		 * {@link #releasePlane} once done with it, so a loop of leases and
+		 * releases reuses the same planes rather than allocating new ones.
+		 */
+		public ByteArrayPlane leasePlane(final int imageIndex,
+			final long planeIndex, final Interval bounds, final SCIFIOConfig config)
+			throws FormatException, IOException
+		{
+			final ByteArrayPlane plane = leasePlane(imageIndex, bounds, config);
+			boolean success = false;
+			try {
+				openPlane(imageIndex, planeIndex, plane, bounds, config);
+				success = true;
+				return plane;
+			}
+			finally {
+				if (!success) releasePlane(plane);
+			}
+		}
+
+		/**
+		 * Returns a plane to this reader's {@link PlaneBufferPool}. The plane, and
+		 * its byte array, must not be used afterwards.
+		 */
+		public void releasePlane(final ByteArrayPlane plane) {
+			final PlaneBufferPool pool = getPlaneBufferPool();
+			if (pool != null) pool.release(plane);
+		}
+
+		/**
+		 * Reads the given region of a plane, decoded into a primitive array
+		 * matching the image's pixel type, in native byte order. See
+		 * {@link PrimitiveArrays#decode} for the array types.
+		 */
+		public Object openPrimitivePlane(final int imageIndex,
+			final long planeIndex, final Interval bounds, final SCIFIOConfig config)
+			throws FormatException, IOException
+		{
+			final ImageMetadata imgMeta = getMetadata().get(imageIndex);
+			final int pixelType = imgMeta.getPixelType();
+			if (FormatTools.getBytesPerPixel(pixelType) == 1) {
+				// NB: no conversion needed, so the plane's own bytes are returned.
+				return openPlane(imageIndex, planeIndex, bounds, config).getBytes();
+			}
+			// NB: the raw bytes are only needed until decoded, so they are read
+			// into a scratch plane reused across calls.
+			final ByteArrayPlane plane = takeScratchPlane(imageIndex, bounds);
+			try {
+				openPlane(imageIndex, planeIndex, plane, bounds, config);
+				return PrimitiveArrays.decode(plane.getBytes(), pixelType, imgMeta
+					.isLittleEndian());
+			}
+			finally {
+				releaseScratchPlane(plane);
+			}
+		}
+
+		/**
+		 * Reads the given region of a plane from a resolution level of an image,
+		 * into a new plane. The bounds are in the coordinates of that level, see
+		 * {@link Metadata#getResolution(int, int)}.
+		 */
+		public ByteArrayPlane openPlane(final int imageIndex,
+			final int resolution, final long planeIndex, final Interval bounds,
 			final SCIFIOConfig config) throws FormatException, IOException
 		{
-			final IFormatReader reader = getMetadata().getReader();
-			reader.setSeries(imageIndex);
+			return openPlane(imageIndex, resolution, planeIndex, createPlane(bounds),
+				bounds, config);
+		}
+
+		/**
+		 * Reads the given region of a plane from a resolution level of an image,
+		 * into the given plane. The bounds are in the coordinates of that level,
+		 * see {@link Metadata#getResolution(int, int)}.
+		 */
+		public ByteArrayPlane openPlane(final int imageIndex,
+			final int resolution, final long planeIndex, final ByteArrayPlane plane,
+			final Interval bounds, final SCIFIOConfig config) throws FormatException,
+			IOException
+		{
+			final Metadata meta = getMetadata();
+			final ImageMetadata imgMeta = meta.get(imageIndex);
+			final int xIndex = imgMeta.getAxisIndex(Axes.X);
+			final int yIndex = imgMeta.getAxisIndex(Axes.Y);
+			final int x = (int) bounds.min(xIndex);
+			final int y = (int) bounds.min(yIndex);
+			final int w = (int) bounds.dimension(xIndex);
+			final int h = (int) bounds.dimension(yIndex);
+
+			final PlaneCache cache = planeCache(config);
+			final int pixelBytes = pixelBytes(imgMeta);
+			final int blocks = blocks(imgMeta);
+			if (cache != null && cache.get(imageIndex, resolution, planeIndex, x, y,
+				w, h, pixelBytes, blocks, plane.getBytes()))
+			{
+				plane.setColorTable(meta.getColorTable(imageIndex, planeIndex));
+				return plane;
+			}
+			if (cache != null && resolution == 0 && !isTileAligned(meta, imageIndex,
+				x, y, w, h, pixelBytes * blocks, cache.getMaxBytes()))
+			{
+				// NB: decode the whole tiles overlapping the region, so that
+				// neighbouring requests are served from the cache rather than
+				// decoding the same tiles again.
+				readTiles(meta, imageIndex, planeIndex, x, y, w, h, pixelBytes, blocks,
+					cache, plane.getBytes());
+				plane.setColorTable(meta.getColorTable(imageIndex, planeIndex));
+				return plane;
+			}
+
+			final ReaderPool pool = meta.getReaderPool();
+			final IFormatReader reader = pool.borrow();
 			try {
-				final Metadata meta = getMetadata();
-				final int xIndex = meta.get(imageIndex).getAxisIndex(Axes.X);
-				final int yIndex = meta.get(imageIndex).getAxisIndex(Axes.Y);
-				final int x = (int) bounds.min(xIndex);
-				final int y = (int) bounds.min(yIndex);
-				final int w = (int) bounds.dimension(xIndex);
-				final int h = (int) bounds.dimension(yIndex);
+				reader.setSeries(imageIndex);
+				if (resolution != 0) reader.setResolution(resolution);
 				reader.openBytes((int) planeIndex, plane.getBytes(), x, y, w, h);
 
-				plane.setColorTable(getMetadata().getColorTable(imageIndex,
+				plane.setColorTable(meta.getColorTable(reader, imageIndex,
 					planeIndex));
 			}
 			catch (final loci.formats.FormatException e) {
 				throw new FormatException(e);
 			}
+			finally {
+				pool.release(reader);
+			}
 
+			if (cache != null) {
+				cache.put(imageIndex, resolution, planeIndex, x, y, w, h, plane
+					.getBytes(), w * h * pixelBytes * blocks);
+			}
 			return plane;
 		}
 
+		/**
+		 * Reads the given region of a plane asynchronously. When planes are
+		 * requested in sequence along any non-planar axis, the next planes are
+		 * read ahead (see {@link BioFormatsConfig#setPrefetchDepth}), so they are
+		 * ready by the time they are requested.
+		 */
+		public CompletableFuture<ByteArrayPlane> openPlaneAsync(
+			final int imageIndex, final long planeIndex, final Interval bounds,
+			final SCIFIOConfig config)
+		{
+			final long planeCount = getMetadata().get(imageIndex).getPlaneCount();
+			return prefetcher(config).open(imageIndex, planeIndex, bounds,
+				planeCount, (i, p, b) -> openPlane(i, p, b, config));
+		}
+
+		/**
+		 * Reads the thumbnail of a plane, as produced by Bio-Formats: a
+		 * downsampled plane of {@link ImageMetadata#getThumbSizeX()} by
+		 * {@link ImageMetadata#getThumbSizeY()} pixels, laid out as
+		 * {@link IFormatReader#openBytes} would. Pyramidal formats serve it from
+		 * a low resolution level rather than the full plane.
+		 * <p>
+		 * Thumbnails are cached in memory, and on disk if a directory is set (see
+		 * {@link BioFormatsConfig#setThumbnailDirectory}).
+		 * </p>
+		 */
+		public byte[] openThumbBytes(final int imageIndex, final long planeIndex,
+			final SCIFIOConfig config) throws FormatException, IOException
+		{
+			final Metadata meta = getMetadata();
+			final ThumbnailCache cache = thumbnailCache(config);
+			byte[] thumb = null;
+			try {
+				thumb = cache.get(imageIndex, planeIndex);
+			}
+			catch (final IOException e) {
+				log().warn("Could not read cached thumbnail", e);
+			}
+			if (thumb != null) return thumb;
+
+			final ReaderPool pool = meta.getReaderPool();
+			final IFormatReader reader = pool.borrow();
+			try {
+				reader.setSeries(imageIndex);
+				thumb = reader.openThumbBytes((int) planeIndex);
+			}
+			catch (final loci.formats.FormatException e) {
+				throw new FormatException(e);
+			}
+			finally {
+				pool.release(reader);
+			}
+
+			try {
+				cache.put(imageIndex, planeIndex, thumb);
+			}
+			catch (final IOException e) {
+				log().warn("Could not cache thumbnail", e);
+			}
+			return thumb;
+		}
+
+		/**
+		 * Reads the given region of consecutive planes of an image. See
+		 * {@link #openPlanes(int, long[], Interval, List, SCIFIOConfig)}.
+		 */
+		public List<ByteArrayPlane> openPlanes(final int imageIndex,
+			final long firstPlane, final int planeCount, final Interval bounds,
+			final SCIFIOConfig config) throws FormatException, IOException
+		{
+			final long[] planeIndices = new long[planeCount];
+			for (int i = 0; i < planeCount; i++) {
+				planeIndices[i] = firstPlane + i;
+			}
+			return openPlanes(imageIndex, planeIndices, bounds, null, config);
+		}
+
+		/**
+		 * Reads the given region of several planes of an image, e.g. a Z-stack,
+		 * with a single borrowed reader. The planes are read in ascending order,
+		 * for locality within the file, and returned in the order requested.
+		 *
+		 * @param planes planes to read into, one per plane index, or null to
+		 *          lease them from this reader's pool; see
+		 *          {@link #releasePlane}.
+		 */
+		public List<ByteArrayPlane> openPlanes(final int imageIndex,
+			final long[] planeIndices, final Interval bounds,
+			final List<ByteArrayPlane> planes, final SCIFIOConfig config)
+			throws FormatException, IOException
+		{
+			if (planes != null && planes.size() != planeIndices.length) {
+				throw new IllegalArgumentException("Expected " + planeIndices.length +
+					" planes but got " + planes.size());
+			}
+			final List<ByteArrayPlane> result = new ArrayList<>(planeIndices.length);
+			boolean success = false;
+			try {
+				for (int i = 0; i < planeIndices.length; i++) {
+					result.add(planes == null ? leasePlane(imageIndex, bounds, config)
+						: planes.get(i));
+				}
+				readPlanes(imageIndex, planeIndices, bounds, result, config);
+				success = true;
+				return result;
+			}
+			finally {
+				// NB: return the leased planes if the caller never gets them.
+				if (!success && planes == null) {
+					for (final ByteArrayPlane plane : result) {
+						releasePlane(plane);
+					}
+				}
+			}
+		}
+
+		/**
+		 * Reads the given region of several planes of an image into the given
+		 * planes. See {@link #openPlanes(int, long[], Interval, List,
+		 * SCIFIOConfig)}.
+		 */
+		private void readPlanes(final int imageIndex, final long[] planeIndices,
+			final Interval bounds, final List<ByteArrayPlane> result,
+			final SCIFIOConfig config) throws FormatException, IOException
+		{
+			final Metadata meta = getMetadata();
+			final ImageMetadata imgMeta = meta.get(imageIndex);
+			final int xIndex = imgMeta.getAxisIndex(Axes.X);
+			final int yIndex = imgMeta.getAxisIndex(Axes.Y);
+			final int x = (int) bounds.min(xIndex);
+			final int y = (int) bounds.min(yIndex);
+			final int w = (int) bounds.dimension(xIndex);
+			final int h = (int) bounds.dimension(yIndex);
+			final int pixelBytes = pixelBytes(imgMeta);
+			final int blocks = blocks(imgMeta);
+			final int length = w * h * pixelBytes * blocks;
+
+			final PlaneCache cache = planeCache(config);
+			if (cache != null && !isTileAligned(meta, imageIndex, x, y, w, h,
+				pixelBytes * blocks, cache.getMaxBytes()))
+			{
+				// NB: assemble each plane from cached whole tiles.
+				for (int i = 0; i < planeIndices.length; i++) {
+					openPlane(imageIndex, planeIndices[i], result.get(i), bounds, config);
+				}
+				return;
+			}
+
+			final Integer[] order = new Integer[planeIndices.length];
+			for (int i = 0; i < order.length; i++) {
+				order[i] = i;
+			}
+			Arrays.sort(order, (a, b) -> Long.compare(planeIndices[a],
+				planeIndices[b]));
+
+			final ReaderPool pool = meta.getReaderPool();
+			final IFormatReader reader = pool.borrow();
+			try {
+				reader.setSeries(imageIndex);
+				for (final int i : order) {
+					final long planeIndex = planeIndices[i];
+					final ByteArrayPlane plane = result.get(i);
+					if (cache == null || !cache.get(imageIndex, 0, planeIndex, x, y, w,
+						h, pixelBytes, blocks, plane.getBytes()))
+					{
+						reader.openBytes((int) planeIndex, plane.getBytes(), x, y, w, h);
+						if (cache != null) {
+							cache.put(imageIndex, 0, planeIndex, x, y, w, h, plane.getBytes(),
+								length);
+						}
+					}
+					plane.setColorTable(meta.getColorTable(reader, imageIndex,
+						planeIndex));
+				}
+			}
+			catch (final loci.formats.FormatException e) {
+				throw new FormatException(e);
+			}
+			finally {
+				pool.release(reader);
+			}
+		}
+
+		/**
+		 * Reads the given region of a plane into an off-heap buffer, laid out as
+		 * {@link #openPlane} would. Unlike {@code openPlane}, the region may be
+		 * larger than 2 GB: it is read in chunks of whole tiles, each copied into
+		 * place. Non-interleaved channels are stored one after another, each as a
+		 * contiguous block of the full region.
+		 */
+		public SegmentedBuffer openLargePlane(final int imageIndex,
+			final long planeIndex, final Interval bounds) throws FormatException,
+			IOException
+		{
+			final Metadata meta = getMetadata();
+			final ImageMetadata imgMeta = meta.get(imageIndex);
+			final int xIndex = imgMeta.getAxisIndex(Axes.X);
+			final int yIndex = imgMeta.getAxisIndex(Axes.Y);
+			final int x = Math.toIntExact(bounds.min(xIndex));
+			final int y = Math.toIntExact(bounds.min(yIndex));
+			final int w = Math.toIntExact(bounds.dimension(xIndex));
+			final int h = Math.toIntExact(bounds.dimension(yIndex));
+			final int pixelBytes = pixelBytes(imgMeta);
+			final int blocks = blocks(imgMeta);
+			final SegmentedBuffer buffer = new SegmentedBuffer((long) w * h *
+				pixelBytes * blocks);
+
+			final int[] chunkSize = chunkSize(w, h, meta.getOptimalTileWidth(
+				imageIndex), meta.getOptimalTileHeight(imageIndex), pixelBytes *
+					blocks, CHUNK_BYTES);
+			final int cw = chunkSize[0];
+			final int ch = chunkSize[1];
+			final byte[] chunk = new byte[cw * ch * pixelBytes * blocks];
+
+			final ReaderPool pool = meta.getReaderPool();
+			final IFormatReader reader = pool.borrow();
+			try {
+				reader.setSeries(imageIndex);
+				for (int cy = 0; cy < h; cy += ch) {
+					final int chunkH = Math.min(ch, h - cy);
+					for (int cx = 0; cx < w; cx += cw) {
+						final int chunkW = Math.min(cw, w - cx);
+						reader.openBytes((int) planeIndex, chunk, x + cx, y + cy, chunkW,
+							chunkH);
+						buffer.putRegion(chunk, cx, cy, chunkW, chunkH, w, h, pixelBytes,
+							blocks);
+					}
+				}
+			}
+			catch (final loci.formats.FormatException e) {
+				throw new FormatException(e);
+			}
+			finally {
+				pool.release(reader);
+			}
+			return buffer;
+		}
+
+		/**
+		 * Computes the size of the chunks in which {@link #openLargePlane} reads
+		 * a region. Chunks span whole tile columns and rows where possible, so
+		 * that no tile is decoded twice.
+		 *
+		 * @param pixelBytes Bytes per pixel, over all channels.
+		 * @param maxBytes Maximum number of bytes per chunk.
+		 * @return the width and height of the chunks.
+		 */
+		static int[] chunkSize(final int w, final int h, final long tileWidth,
+			final long tileHeight, final int pixelBytes, final int maxBytes)
+		{
+			final long tw = Math.max(1, tileWidth);
+			final long th = Math.max(1, tileHeight);
+			int cw = (int) Math.min(w, maxBytes / pixelBytes);
+			if (cw < w && cw >= tw) cw = (int) (cw / tw * tw);
+			cw = Math.max(1, cw);
+			int ch = (int) Math.min(h, maxBytes / ((long) cw * pixelBytes));
+			if (ch < h && ch >= th) ch = (int) (ch / th * th);
+			ch = Math.max(1, ch);
+			return new int[] { cw, ch };
+		}
+
+		/**
+		 * Creates an iterator over the planes of the given image in blocks of its
+		 * {@link Metadata#getOptimalTileWidth(int) optimal tile size}.
+		 */
+		public TileIterator tileIterator(final int imageIndex) {
+			final Metadata meta = getMetadata();
+			return new TileIterator(meta.get(imageIndex), meta.getOptimalTileWidth(
+				imageIndex), meta.getOptimalTileHeight(imageIndex));
+		}
+
+		// -- Reader API Methods --
+
+		@Override
+		public long getOptimalTileWidth(final int imageIndex) {
+			return getMetadata().getOptimalTileWidth(imageIndex);
+		}
+
+		@Override
+		public long getOptimalTileHeight(final int imageIndex) {
+			return getMetadata().getOptimalTileHeight(imageIndex);
+		}
+
+		@Override
+		public ByteArrayPlane openPlane(final int imageIndex, final long planeIndex,
+			final ByteArrayPlane plane, final Interval bounds,
+			final SCIFIOConfig config) throws FormatException, IOException
+		{
+			return openPlane(imageIndex, 0, planeIndex, plane, bounds, config);
+		}
+
+		@Override
+		public void close(final boolean fileOnly) throws IOException {
+			synchronized (this) {
+				planeCache = null;
+				planeCacheMeta = null;
+				thumbnailCache = null;
+				thumbnailCacheMeta = null;
+				thumbnailCacheDirectory = null;
+				if (prefetcher != null) prefetcher.clear();
+				prefetcher = null;
+				prefetcherMeta = null;
+				scratchPlane = null;
+			}
+			super.close(fileOnly);
+		}
+
 		@Override
 		protected String[] createDomainArray() {
 			return new String[0];
 		}
 
+		// -- Helper methods --
+
+		/**
+		 * Gets the plane cache for the current metadata, (re)creating it as
+		 * needed. Returns null if caching is disabled in the given config.
+		 */
+		private synchronized PlaneCache planeCache(final SCIFIOConfig config) {
+			final long maxBytes = BioFormatsConfig.getPlaneCacheSize(config);
+			if (maxBytes <= 0) return null;
+			if (planeCache == null || planeCacheMeta != getMetadata() || planeCache
+				.getMaxBytes() != maxBytes)
+			{
+				planeCache = new PlaneCache(maxBytes);
+				planeCacheMeta = getMetadata();
+			}
+			return planeCache;
+		}
+
+		/**
+		 * Checks whether the given region consists of whole tiles, or whether
+		 * the tiles overlapping it are too large to cache, in which case there is
+		 * nothing to gain from reading whole tiles.
+		 */
+		private static boolean isTileAligned(final Metadata meta,
+			final int imageIndex, final int x, final int y, final int w,
+			final int h, final int bytesPerPixel, final long cacheBytes)
+		{
+			final ImageMetadata imgMeta = meta.get(imageIndex);
+			final long sizeX = imgMeta.getAxisLength(Axes.X);
+			final long sizeY = imgMeta.getAxisLength(Axes.Y);
+			final int tw = meta.getOptimalTileWidth(imageIndex);
+			final int th = meta.getOptimalTileHeight(imageIndex);
+			if (tw <= 0 || th <= 0) return true;
+			if ((long) tw * th * bytesPerPixel > cacheBytes) return true;
+			return x % tw == 0 && y % th == 0 && (w % tw == 0 || x + w == sizeX) &&
+				(h % th == 0 || y + h == sizeY);
+		}
+
+		/**
+		 * Fills {@code dest} with the given region, assembled from the whole
+		 * tiles overlapping it. Tiles are taken from the cache if present, and
+		 * cached once decoded.
+		 */
+		private static void readTiles(final Metadata meta, final int imageIndex,
+			final long planeIndex, final int x, final int y, final int w,
+			final int h, final int pixelBytes, final int blocks,
+			final PlaneCache cache, final byte[] dest) throws FormatException,
+			IOException
+		{
+			final ImageMetadata imgMeta = meta.get(imageIndex);
+			final int sizeX = (int) imgMeta.getAxisLength(Axes.X);
+			final int sizeY = (int) imgMeta.getAxisLength(Axes.Y);
+			final int tw = meta.getOptimalTileWidth(imageIndex);
+			final int th = meta.getOptimalTileHeight(imageIndex);
+			final byte[] tile = new byte[tw * th * pixelBytes * blocks];
+
+			final ReaderPool pool = meta.getReaderPool();
+			IFormatReader reader = null;
+			try {
+				for (int ty = y / th * th; ty < y + h; ty += th) {
+					for (int tx = x / tw * tw; tx < x + w; tx += tw) {
+						final int tileW = Math.min(tw, sizeX - tx);
+						final int tileH = Math.min(th, sizeY - ty);
+						if (!cache.get(imageIndex, 0, planeIndex, tx, ty, tileW, tileH,
+							pixelBytes, blocks, tile))
+						{
+							if (reader == null) {
+								reader = pool.borrow();
+								reader.setSeries(imageIndex);
+							}
+							reader.openBytes((int) planeIndex, tile, tx, ty, tileW, tileH);
+							cache.put(imageIndex, 0, planeIndex, tx, ty, tileW, tileH, tile,
+								tileW * tileH * pixelBytes * blocks);
+						}
+						copyOverlap(tile, tx, ty, tileW, tileH, dest, x, y, w, h,
+							pixelBytes, blocks);
+					}
+				}
+			}
+			catch (final loci.formats.FormatException e) {
+				throw new FormatException(e);
+			}
+			finally {
+				if (reader != null) pool.release(reader);
+			}
+		}
+
+		/**
+		 * Copies the part of a tile overlapping a region into the region's
+		 * bytes, block by block.
+		 */
+		private static void copyOverlap(final byte[] tile, final int tx,
+			final int ty, final int tw, final int th, final byte[] dest,
+			final int x, final int y, final int w, final int h,
+			final int pixelBytes, final int blocks)
+		{
+			final int x0 = Math.max(x, tx);
+			final int y0 = Math.max(y, ty);
+			final int rowBytes = (Math.min(x + w, tx + tw) - x0) * pixelBytes;
+			final int rows = Math.min(y + h, ty + th) - y0;
+			for (int b = 0; b < blocks; b++) {
+				for (int row = 0; row < rows; row++) {
+					final int srcOffset = b * tw * th * pixelBytes + ((y0 - ty + row) *
+						tw + x0 - tx) * pixelBytes;
+					final int dstOffset = b * w * h * pixelBytes + ((y0 - y + row) * w +
+						x0 - x) * pixelBytes;
+					System.arraycopy(tile, srcOffset, dest, dstOffset, rowBytes);
+				}
+			}
+		}
+
+		/**
+		 * Leases an unread plane for the given region from the plane pool, or
+		 * creates one if the pool has none of the right size.
+		 */
+		private ByteArrayPlane leasePlane(final int imageIndex,
+			final Interval bounds, final SCIFIOConfig config)
+		{
+			final ImageMetadata imgMeta = getMetadata().get(imageIndex);
+			final long length = planeLength(imgMeta, bounds);
+			final ByteArrayPlane plane = length > Integer.MAX_VALUE ? null
+				: planePool(config).lease((int) length);
+			if (plane == null) return createPlane(bounds);
+			plane.populate(imgMeta, plane.getBytes(), bounds);
+			return plane;
+		}
+
+		/**
+		 * Takes the scratch plane, if it is not in use and of the right size, or
+		 * creates a new plane otherwise.
+		 */
+		private ByteArrayPlane takeScratchPlane(final int imageIndex,
+			final Interval bounds)
+		{
+			final ImageMetadata imgMeta = getMetadata().get(imageIndex);
+			final ByteArrayPlane plane;
+			synchronized (this) {
+				plane = scratchPlane;
+				scratchPlane = null;
+			}
+			if (plane == null || plane.getBytes().length != planeLength(imgMeta,
+				bounds))
+			{
+				return createPlane(bounds);
+			}
+			plane.populate(imgMeta, plane.getBytes(), bounds);
+			return plane;
+		}
+
+		/** Keeps the given plane as the scratch plane, for the next call. */
+		private synchronized void releaseScratchPlane(
+			final ByteArrayPlane plane)
+		{
+			scratchPlane = plane;
+		}
+
+		/** @return the number of bytes of the given region of a plane. */
+		private static long planeLength(final ImageMetadata imgMeta,
+			final Interval bounds)
+		{
+			long length = FormatTools.getBytesPerPixel(imgMeta.getPixelType());
+			for (int d = 0; d < bounds.numDimensions(); d++) {
+				length *= bounds.dimension(d);
+			}
+			return length;
+		}
+
+		/**
+		 * Gets the plane pool, (re)creating it if its budget differs from the
+		 * given config's.
+		 */
+		private synchronized PlaneBufferPool planePool(final SCIFIOConfig config) {
+			final long maxBytes = BioFormatsConfig.getPlanePoolSize(config);
+			if (planePool == null || planePool.getMaxBytes() != maxBytes) {
+				planePool = new PlaneBufferPool(maxBytes);
+			}
+			return planePool;
+		}
+
+		/**
+		 * Gets the prefetcher for the current metadata, (re)creating it as
+		 * needed.
+		 */
+		private synchronized PlanePrefetcher prefetcher(
+			final SCIFIOConfig config)
+		{
+			final int depth = BioFormatsConfig.getPrefetchDepth(config);
+			if (prefetcher == null || prefetcherMeta != getMetadata() || prefetcher
+				.getDepth() != depth)
+			{
+				if (prefetcher != null) prefetcher.clear();
+				prefetcher = new PlanePrefetcher(depth);
+				prefetcherMeta = getMetadata();
+			}
+			return prefetcher;
+		}
+
+		/**
+		 * Gets the thumbnail cache for the current metadata, (re)creating it as
+		 * needed.
+		 */
+		private synchronized ThumbnailCache thumbnailCache(
+			final SCIFIOConfig config)
+		{
+			final File directory = BioFormatsConfig.getThumbnailDirectory(config);
+			if (thumbnailCache == null || thumbnailCacheMeta != getMetadata() ||
+				!Objects.equals(thumbnailCacheDirectory, directory))
+			{
+				final IFormatReader reader = getMetadata().getReader();
+				final String id = reader.getCurrentFile();
+				// NB: these options change the numbering of the series.
+				final String options = "groupFiles=" + reader.isGroupFiles() +
+					",flattenedResolutions=" + reader.hasFlattenedResolutions();
+				thumbnailCache = new ThumbnailCache(ThumbnailCache.DEFAULT_MAX_ENTRIES,
+					directory, id == null ? null : new File(id), options);
+				thumbnailCacheMeta = getMetadata();
+				thumbnailCacheDirectory = directory;
+			}
+			return thumbnailCache;
+		}
+
+		/**
+		 * @return the number of bytes per pixel in one block of a plane, as laid
+		 *         out by {@link IFormatReader#openBytes}.
+		 */
+		private static int pixelBytes(final ImageMetadata imgMeta) {
+			final int bpp = FormatTools.getBytesPerPixel(imgMeta.getPixelType());
+			return isInterleaved(imgMeta) ? bpp * planarChannels(imgMeta) : bpp;
+		}
+
+		/**
+		 * @return the number of blocks in a plane, as laid out by
+		 *         {@link IFormatReader#openBytes}: one per non-interleaved channel.
+		 */
+		private static int blocks(final ImageMetadata imgMeta) {
+			return isInterleaved(imgMeta) ? 1 : planarChannels(imgMeta);
+		}
+
+		private static boolean isInterleaved(final ImageMetadata imgMeta) {
+			final int cIndex = imgMeta.getAxisIndex(Axes.CHANNEL);
+			return cIndex >= 0 && cIndex < imgMeta.getAxisIndex(Axes.X);
+		}
+
+		private static int planarChannels(final ImageMetadata imgMeta) {
+			final int cIndex = imgMeta.getAxisIndex(Axes.CHANNEL);
+			if (cIndex < 0 || cIndex >= imgMeta.getPlanarAxisCount()) return 1;
+			return (int) imgMeta.getAxisLength(cIndex);
+		}
+
 	}
 
-	// -- Helper methods --
+	// -- Helper classes --
+
+	/** The color tables of one series. */
+	private static final class ColorTables {
+
+		/** The reader's lookup table, shared by all channels, or null. */
+		private final ColorTable lut;
+
+		/** Per-channel tables from the metadata store, if there is no lut. */
+		private final ColorTable[] channels;
+
+		private ColorTables(final ColorTable lut, final ColorTable[] channels) {
+			this.lut = lut;
+			this.channels = channels;
+		}
+	}
 
 	/**
-	 * Compiles the list of Bio-Formats reader classes, excluding the
-	 * {@link #DO_NOT_CONVERT} blacklist.
-	 *
-	 * @return true if the reader class list was re-generated.
+	 * Immutable snapshot of the reader classes, along with the cached
+	 * {@link ImageReader}, suffixes and {@link ReaderIndex} derived from them.
 	 */
-	private boolean cacheReaderClasses() {
-		final Class<? extends IFormatReader>[] defaultClasses = ImageReader
-			.getDefaultReaderClasses().getClasses();
-		final int currentHash = Arrays.hashCode(defaultClasses);
+	private static final class ReaderSnapshot {
 
-		// If our classList is uninitialized, or the Bio-Formats classList has
-		// changed, compute the current reader classes.
-		if (readerClasses == null || cachedReaderHash != currentHash) {
-			final ClassList<IFormatReader> targetClasses = new ClassList<>(
-				IFormatReader.class);
+		/** Bio-Formats' default reader list this snapshot was built from. */
+		private final ClassList<IFormatReader> source;
+
+		private final int sourceHash;
+
+		/** Reader classes, excluding the {@link #DO_NOT_CONVERT} blacklist. */
+		private final ClassList<IFormatReader> readerClasses;
+
+		private final ImageReader cachedReader;
+
+		private final ReaderIndex index;
+
+		private final String[] suffixes;
 
+		private ReaderSnapshot(final ClassList<IFormatReader> source,
+			final int sourceHash,
+			final Class<? extends IFormatReader>[] defaultClasses,
+			final List<Class<? extends IFormatReader>> addedClasses)
+		{
+			this.source = source;
+			this.sourceHash = sourceHash;
+			readerClasses = new ClassList<>(IFormatReader.class);
 			// add reader classes to the list, excluding the blacklist
 			for (final Class<? extends IFormatReader> c : defaultClasses) {
-				if (convert(c)) targetClasses.addClass(c);
+				if (convert(c)) readerClasses.addClass(c);
+			}
+			for (final Class<? extends IFormatReader> c : addedClasses) {
+				readerClasses.addClass(c);
 			}
-			readerClasses = targetClasses;
-			cachedReaderHash = currentHash;
+			cachedReader = new ImageReader(readerClasses);
+			index = new ReaderIndex(cachedReader);
+			suffixes = cachedReader.getSuffixes();
+		}
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Gets the current reader snapshot. This is the hot path used by format
+	 * checking, so it only verifies that Bio-Formats' default reader list is
+	 * still the same object; changes to its contents are picked up by
+	 * {@link #refreshSnapshot()}, which runs whenever a reader is created.
+	 */
+	private ReaderSnapshot snapshot() {
+		final ReaderSnapshot current = snapshot;
+		if (current != null && current.source == ImageReader
+			.getDefaultReaderClasses())
+		{
+			return current;
+		}
+		return refreshSnapshot();
+	}
 
-			return true;
+	/**
+	 * Compiles the list of Bio-Formats reader classes, excluding the
+	 * {@link #DO_NOT_CONVERT} blacklist, and replaces the snapshot if the list
+	 * has changed.
+	 */
+	private synchronized ReaderSnapshot refreshSnapshot() {
+		final ClassList<IFormatReader> source = ImageReader
+			.getDefaultReaderClasses();
+		final Class<? extends IFormatReader>[] defaultClasses = source
+			.getClasses();
+		final int currentHash = Arrays.hashCode(defaultClasses);
+
+		// If our snapshot is uninitialized, or the Bio-Formats classList has
+		// changed, compute the current reader classes.
+		final ReaderSnapshot current = snapshot;
+		if (current == null || current.source != source ||
+			current.sourceHash != currentHash)
+		{
+			snapshot = new ReaderSnapshot(source, currentHash, defaultClasses,
+				addedClasses);
 		}
-		return false;
+		return snapshot;
 	}
 
 	/** Returns false if this reader class already exists in SCIFIO. */
-	private boolean convert(final Class<? extends IFormatReader> c) {
+	private static boolean convert(final Class<? extends IFormatReader> c) {
 		for (final String s : DO_NOT_CONVERT) {
 			if (s.equals(c.getName())) return false;
 		}
@@ -570,18 +1754,64 @@ public class BioFormatsFormat extends AbstractFormat {
 		return ((BioFormatsFormat) thing.getFormat()).getCachedImageReader();
 	}
 
+	/**
+	 * As {@link #getCachedImageReader(HasFormat)} but will use
+	 * {@link #getReaderIndex()} instead.
+	 */
+	private static ReaderIndex getReaderIndex(final HasFormat thing) {
+		return ((BioFormatsFormat) thing.getFormat()).getReaderIndex();
+	}
+
+	/**
+	 * Wraps the given handle in a {@link DataHandleAdapter}, memory-mapping it
+	 * if it points to a local file and the config asks for it.
+	 */
+	private static DataHandleAdapter createAdapter(
+		final DataHandle<Location> handle, final SCIFIOConfig config)
+		throws IOException
+	{
+		if (handle.get() instanceof FileLocation && BioFormatsConfig
+			.isMemoryMapped(config))
+		{
+			return new DataHandleAdapter(handle, ((FileLocation) handle.get())
+				.getFile());
+		}
+		return new DataHandleAdapter(handle, BioFormatsConfig.getHandleBlockSize(
+			config));
+	}
+
 	/**
 	 * Constructs a SCIFIO {@link ImageMetadata} object from the {@code s}th
-	 * series of the given Bio-Formats {@link IFormatReader}.
+	 * series of the given Bio-Formats {@link IFormatReader}, which must be the
+	 * primary reader of the given metadata.
 	 */
-	private static ImageMetadata convertMetadata(final IFormatReader reader,
-		final int s)
+	private static ImageMetadata convertMetadata(final Metadata meta,
+		final IFormatReader reader, final int s)
+	{
+		return convertMetadata(meta, reader, s, 0);
+	}
+
+	/**
+	 * Constructs a SCIFIO {@link ImageMetadata} object from the given resolution
+	 * level of the {@code s}th series of the given Bio-Formats
+	 * {@link IFormatReader}, which must be the primary reader of the given
+	 * metadata. Physical pixel sizes, which the metadata store only records for
+	 * the full resolution, are scaled to the level.
+	 */
+	private static ImageMetadata convertMetadata(final Metadata meta,
+		final IFormatReader reader, final int s, final int resolution)
 	{
 		final ImageMetadata imgMeta = new DefaultImageMetadata();
 		reader.setSeries(s);
-
-		final OMEXMLMetadataImpl store = (OMEXMLMetadataImpl) reader
-			.getMetadataStore();
+		final double fullSizeX = reader.getSizeX();
+		final double fullSizeY = reader.getSizeY();
+		if (resolution != 0) reader.setResolution(resolution);
+		final double scaleX = fullSizeX / reader.getSizeX();
+		final double scaleY = fullSizeY / reader.getSizeY();
+
+		final MetadataStore rawStore = reader.getMetadataStore();
+		final MetadataRetrieve store = rawStore instanceof MetadataRetrieve
+			? (MetadataRetrieve) rawStore : new DummyMetadata();
 		final ArrayList<CalibratedAxis> axes = new ArrayList<>();
 		final LongArray axisLengths = new LongArray();
 		imgMeta.setPlanarAxisCount(2);
@@ -609,13 +1839,13 @@ public class BioFormatsFormat extends AbstractFormat {
 					axis = FormatTools.createAxis(Axes.X);
 					axes.add(axis);
 					axisLengths.add((long) reader.getSizeX());
-					calibrate(store.getPixelsPhysicalSizeX(s), axis, stageLabelX);
+					calibrate(store.getPixelsPhysicalSizeX(s), scaleX, axis, stageLabelX);
 					break;
 				case 'Y':
 					axis = FormatTools.createAxis(Axes.Y);
 					axes.add(axis);
 					axisLengths.add((long) reader.getSizeY());
-					calibrate(store.getPixelsPhysicalSizeY(s), axis, stageLabelY);
+					calibrate(store.getPixelsPhysicalSizeY(s), scaleY, axis, stageLabelY);
 					// Ensure non-interleaved RGB channels are parsed after the Y axis
 					parseChannelDimensions(reader, imgMeta, DesiredChannels.PLANAR, axes,
 						axisLengths);
@@ -625,7 +1855,7 @@ public class BioFormatsFormat extends AbstractFormat {
 					if (reader.getSizeZ() > 1) {
 						axes.add(axis);
 						axisLengths.add((long) reader.getSizeZ());
-						calibrate(store.getPixelsPhysicalSizeZ(s), axis, stageLabelZ);
+						calibrate(store.getPixelsPhysicalSizeZ(s), 1, axis, stageLabelZ);
 					}
 					break;
 				case 'C':
@@ -658,7 +1888,12 @@ public class BioFormatsFormat extends AbstractFormat {
 		imgMeta.setFalseColor(reader.isFalseColor());
 		imgMeta.setMetadataComplete(reader.isMetadataComplete());
 
-		final MetaTable table = new DefaultMetaTable(reader.getSeriesMetadata());
+		// NB: the series metadata is only looked up once the table is accessed.
+		final MetaTable table = new LazyMetaTable(() -> meta.withPrimary(r -> {
+			r.setSeries(s);
+			if (resolution != 0) r.setResolution(resolution);
+			return r.getSeriesMetadata();
+		}));
 
 		imgMeta.setTable(table);
 		imgMeta.setThumbnail(reader.isThumbnailSeries());
@@ -669,14 +1904,15 @@ public class BioFormatsFormat extends AbstractFormat {
 	/**
 	 * Calibrates the given axis if the physical pixel size is non-null
 	 *
+	 * @param scale Factor by which to scale the physical pixel size
 	 * @param stageLabel
 	 */
 	private static void calibrate(final Length pixelsPhysicalSize,
-		final CalibratedAxis axis, final Length stageLabel)
+		final double scale, final CalibratedAxis axis, final Length stageLabel)
 	{
 		if (pixelsPhysicalSize != null) {
-			FormatTools.calibrate(axis, pixelsPhysicalSize.value().doubleValue(),
-				stageLabel == null ? 0.0 : stageLabel.value().doubleValue());
+			FormatTools.calibrate(axis, pixelsPhysicalSize.value().doubleValue() *
+				scale, stageLabel == null ? 0.0 : stageLabel.value().doubleValue());
 		}
 	}
 
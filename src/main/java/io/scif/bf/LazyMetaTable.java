@@ -0,0 +1,297 @@
+/*
+ * #%L
+ * SCIFIO Bio-Formats compatibility format.
+ * %%
+ * Copyright (C) 2013 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package io.scif.bf;
+
+import io.scif.DefaultMetaTable;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * A {@link io.scif.MetaTable} reading through to a source map - e.g. a
+ * Bio-Formats reader's global or series metadata - until it is first
+ * modified, at which point the source entries are copied in.
+ * <p>
+ * The source is obtained from a {@link Supplier} on first access, so a table
+ * which is never looked at costs neither the time to build its source nor the
+ * memory to hold it. Until the table is modified, it costs no memory beyond
+ * the source itself, and its {@link #keySet()}, {@link #values()} and
+ * {@link #entrySet()} views are read-only. The source must not change while
+ * the table reads through it.
+ * </p>
+ */
+public class LazyMetaTable extends DefaultMetaTable {
+
+	// -- Fields --
+
+	/** Supplier of the source map, or null once the source is obtained. */
+	private volatile Supplier<? extends Map<String, Object>> supplier;
+
+	/** The map read through, or null once copied in. */
+	private Map<String, Object> source;
+
+	// -- Constructors --
+
+	/** Creates a table reading through to the given map. */
+	public LazyMetaTable(final Map<String, Object> source) {
+		this(() -> source);
+	}
+
+	/**
+	 * Creates a table reading through to the map obtained from the given
+	 * supplier, which is called at most once, on first access to the table.
+	 */
+	public LazyMetaTable(final Supplier<? extends Map<String, Object>> source) {
+		supplier = source;
+	}
+
+	// -- LazyMetaTable API methods --
+
+	/** @return true if the source map has been obtained from its supplier. */
+	public boolean isLoaded() {
+		return supplier == null;
+	}
+
+	/** @return true if the source entries have been copied into this table. */
+	public boolean isMaterialized() {
+		return supplier == null && source == null;
+	}
+
+	// -- MetaTable API methods --
+
+	@Override
+	public void putList(final String key, final Object value) {
+		materialize();
+		super.putList(key, value);
+	}
+
+	// -- Map API methods --
+
+	@Override
+	public int size() {
+		final Map<String, Object> s = source();
+		return s == null ? super.size() : s.size();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		final Map<String, Object> s = source();
+		return s == null ? super.isEmpty() : s.isEmpty();
+	}
+
+	@Override
+	public boolean containsKey(final Object key) {
+		final Map<String, Object> s = source();
+		return s == null ? super.containsKey(key) : s.containsKey(key);
+	}
+
+	@Override
+	public boolean containsValue(final Object value) {
+		final Map<String, Object> s = source();
+		return s == null ? super.containsValue(value) : s.containsValue(value);
+	}
+
+	@Override
+	public Object get(final Object key) {
+		final Map<String, Object> s = source();
+		return s == null ? super.get(key) : s.get(key);
+	}
+
+	@Override
+	public Object getOrDefault(final Object key, final Object defaultValue) {
+		final Map<String, Object> s = source();
+		return s == null ? super.getOrDefault(key, defaultValue) : s
+			.getOrDefault(key, defaultValue);
+	}
+
+	@Override
+	public Set<String> keySet() {
+		final Map<String, Object> s = source();
+		return s == null ? super.keySet() : Collections.unmodifiableSet(s
+			.keySet());
+	}
+
+	@Override
+	public Collection<Object> values() {
+		final Map<String, Object> s = source();
+		return s == null ? super.values() : Collections.unmodifiableCollection(s
+			.values());
+	}
+
+	@Override
+	public Set<Map.Entry<String, Object>> entrySet() {
+		final Map<String, Object> s = source();
+		return s == null ? super.entrySet() : Collections.unmodifiableMap(s)
+			.entrySet();
+	}
+
+	@Override
+	public void forEach(final BiConsumer<? super String, ? super Object> action) {
+		final Map<String, Object> s = source();
+		if (s == null) super.forEach(action);
+		else s.forEach(action);
+	}
+
+	@Override
+	public Object put(final String key, final Object value) {
+		materialize();
+		return super.put(key, value);
+	}
+
+	@Override
+	public void putAll(final Map<? extends String, ? extends Object> m) {
+		materialize();
+		super.putAll(m);
+	}
+
+	@Override
+	public Object remove(final Object key) {
+		materialize();
+		return super.remove(key);
+	}
+
+	@Override
+	public void clear() {
+		supplier = null;
+		source = null;
+		super.clear();
+	}
+
+	@Override
+	public Object putIfAbsent(final String key, final Object value) {
+		materialize();
+		return super.putIfAbsent(key, value);
+	}
+
+	@Override
+	public boolean remove(final Object key, final Object value) {
+		materialize();
+		return super.remove(key, value);
+	}
+
+	@Override
+	public boolean replace(final String key, final Object oldValue,
+		final Object newValue)
+	{
+		materialize();
+		return super.replace(key, oldValue, newValue);
+	}
+
+	@Override
+	public Object replace(final String key, final Object value) {
+		materialize();
+		return super.replace(key, value);
+	}
+
+	@Override
+	public Object computeIfAbsent(final String key,
+		final Function<? super String, ? extends Object> mappingFunction)
+	{
+		materialize();
+		return super.computeIfAbsent(key, mappingFunction);
+	}
+
+	@Override
+	public Object computeIfPresent(final String key,
+		final BiFunction<? super String, ? super Object, ? extends Object> remappingFunction)
+	{
+		materialize();
+		return super.computeIfPresent(key, remappingFunction);
+	}
+
+	@Override
+	public Object compute(final String key,
+		final BiFunction<? super String, ? super Object, ? extends Object> remappingFunction)
+	{
+		materialize();
+		return super.compute(key, remappingFunction);
+	}
+
+	@Override
+	public Object merge(final String key, final Object value,
+		final BiFunction<? super Object, ? super Object, ? extends Object> remappingFunction)
+	{
+		materialize();
+		return super.merge(key, value, remappingFunction);
+	}
+
+	@Override
+	public void replaceAll(
+		final BiFunction<? super String, ? super Object, ? extends Object> function)
+	{
+		materialize();
+		super.replaceAll(function);
+	}
+
+	@Override
+	public Object clone() {
+		materialize();
+		return super.clone();
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Gets the map read through, obtaining it from the supplier on first
+	 * access.
+	 *
+	 * @return the source map, or null once its entries are copied in.
+	 */
+	private Map<String, Object> source() {
+		if (supplier != null) {
+			synchronized (this) {
+				final Supplier<? extends Map<String, Object>> s = supplier;
+				if (s != null) {
+					source = s.get();
+					supplier = null;
+				}
+			}
+		}
+		return source;
+	}
+
+	/** Copies the source entries into this table, once. */
+	private void materialize() {
+		final Map<String, Object> entries = source();
+		if (entries == null) return;
+		// NB: drop the source first, so calls back into this table during the
+		// copy see it as materialized.
+		source = null;
+		super.putAll(entries);
+	}
+
+}
@@ -0,0 +1,202 @@
+/*
+ * #%L
+ * SCIFIO Bio-Formats compatibility format.
+ * %%
+ * Copyright (C) 2013 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package io.scif.bf;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import loci.formats.meta.DummyMetadata;
+import ome.units.quantity.Length;
+import ome.xml.model.primitives.Color;
+
+/**
+ * A lightweight Bio-Formats metadata store, recording only what
+ * {@link BioFormatsFormat} reads back from the store: physical pixel sizes,
+ * stage labels and channel colors. Everything else a reader populates is
+ * discarded, as by {@link DummyMetadata}.
+ *
+ * @see BioFormatsConfig#setPixelsOnly
+ */
+public class PixelsOnlyMetadata extends DummyMetadata {
+
+	// -- Fields --
+
+	/** Recorded fields, by image index. */
+	private final List<Image> images = new ArrayList<>();
+
+	// -- MetadataRetrieve API methods --
+
+	@Override
+	public int getImageCount() {
+		return images.size();
+	}
+
+	@Override
+	public Length getPixelsPhysicalSizeX(final int imageIndex) {
+		final Image image = image(imageIndex, false);
+		return image == null ? null : image.physicalSizeX;
+	}
+
+	@Override
+	public Length getPixelsPhysicalSizeY(final int imageIndex) {
+		final Image image = image(imageIndex, false);
+		return image == null ? null : image.physicalSizeY;
+	}
+
+	@Override
+	public Length getPixelsPhysicalSizeZ(final int imageIndex) {
+		final Image image = image(imageIndex, false);
+		return image == null ? null : image.physicalSizeZ;
+	}
+
+	@Override
+	public String getStageLabelName(final int imageIndex) {
+		final Image image = image(imageIndex, false);
+		return image == null ? null : image.stageLabelName;
+	}
+
+	@Override
+	public Length getStageLabelX(final int imageIndex) {
+		final Image image = image(imageIndex, false);
+		return image == null ? null : image.stageLabelX;
+	}
+
+	@Override
+	public Length getStageLabelY(final int imageIndex) {
+		final Image image = image(imageIndex, false);
+		return image == null ? null : image.stageLabelY;
+	}
+
+	@Override
+	public Length getStageLabelZ(final int imageIndex) {
+		final Image image = image(imageIndex, false);
+		return image == null ? null : image.stageLabelZ;
+	}
+
+	/**
+	 * Gets the number of channels of the given image, as far as recorded: i.e.
+	 * up to the last channel with a color.
+	 */
+	@Override
+	public int getChannelCount(final int imageIndex) {
+		final Image image = image(imageIndex, false);
+		return image == null ? 0 : image.channelColors.size();
+	}
+
+	@Override
+	public Color getChannelColor(final int imageIndex, final int channelIndex) {
+		final Image image = image(imageIndex, false);
+		return image == null || channelIndex >= image.channelColors.size() ? null
+			: image.channelColors.get(channelIndex);
+	}
+
+	// -- MetadataStore API methods --
+
+	@Override
+	public void setPixelsPhysicalSizeX(final Length physicalSizeX,
+		final int imageIndex)
+	{
+		image(imageIndex, true).physicalSizeX = physicalSizeX;
+	}
+
+	@Override
+	public void setPixelsPhysicalSizeY(final Length physicalSizeY,
+		final int imageIndex)
+	{
+		image(imageIndex, true).physicalSizeY = physicalSizeY;
+	}
+
+	@Override
+	public void setPixelsPhysicalSizeZ(final Length physicalSizeZ,
+		final int imageIndex)
+	{
+		image(imageIndex, true).physicalSizeZ = physicalSizeZ;
+	}
+
+	@Override
+	public void setStageLabelName(final String name, final int imageIndex) {
+		image(imageIndex, true).stageLabelName = name;
+	}
+
+	@Override
+	public void setStageLabelX(final Length x, final int imageIndex) {
+		image(imageIndex, true).stageLabelX = x;
+	}
+
+	@Override
+	public void setStageLabelY(final Length y, final int imageIndex) {
+		image(imageIndex, true).stageLabelY = y;
+	}
+
+	@Override
+	public void setStageLabelZ(final Length z, final int imageIndex) {
+		image(imageIndex, true).stageLabelZ = z;
+	}
+
+	@Override
+	public void setChannelColor(final Color color, final int imageIndex,
+		final int channelIndex)
+	{
+		final List<Color> colors = image(imageIndex, true).channelColors;
+		while (colors.size() <= channelIndex) {
+			colors.add(null);
+		}
+		colors.set(channelIndex, color);
+	}
+
+	// -- Helper methods --
+
+	/** Gets the given image's fields, adding them if {@code create} is set. */
+	private Image image(final int imageIndex, final boolean create) {
+		if (imageIndex < 0) return null;
+		if (imageIndex >= images.size()) {
+			if (!create) return null;
+			while (images.size() <= imageIndex) {
+				images.add(new Image());
+			}
+		}
+		return images.get(imageIndex);
+	}
+
+	// -- Helper classes --
+
+	private static final class Image {
+
+		private Length physicalSizeX, physicalSizeY, physicalSizeZ;
+
+		private String stageLabelName;
+
+		private Length stageLabelX, stageLabelY, stageLabelZ;
+
+		private final List<Color> channelColors = new ArrayList<>(0);
+	}
+
+}
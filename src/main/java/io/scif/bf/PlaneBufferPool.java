@@ -0,0 +1,173 @@
+/*
+ * #%L
+ * SCIFIO Bio-Formats compatibility format.
+ * %%
+ * Copyright (C) 2013 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package io.scif.bf;
+
+import io.scif.ByteArrayPlane;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Pool of released planes for reuse, bucketed by the exact size of their byte
+ * arrays.
+ * <p>
+ * The pool retains at most a fixed number of bytes; planes released beyond
+ * that budget are left to the garbage collector. Once the pool holds a plane
+ * of each size in use, leasing and releasing allocate nothing.
+ * </p>
+ */
+public class PlaneBufferPool {
+
+	// -- Fields --
+
+	private final long maxBytes;
+
+	/** Buckets of released planes. NB: few sizes are in use at once. */
+	private final List<Bucket> buckets = new ArrayList<>();
+
+	/** The planes currently held by the pool, to detect double releases. */
+	private final Set<ByteArrayPlane> retained = Collections.newSetFromMap(
+		new IdentityHashMap<>());
+
+	private long retainedBytes;
+
+	private long leases;
+
+	private long reuses;
+
+	// -- Constructor --
+
+	/** Creates a pool retaining up to {@code maxBytes} bytes of planes. */
+	public PlaneBufferPool(final long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	// -- PlaneBufferPool API methods --
+
+	/**
+	 * Takes a released plane whose byte array has exactly the given length out
+	 * of the pool.
+	 *
+	 * @return the plane, or null if there is none.
+	 */
+	public synchronized ByteArrayPlane lease(final int length) {
+		leases++;
+		final Bucket bucket = bucket(length);
+		if (bucket == null || bucket.planes.isEmpty()) return null;
+		reuses++;
+		retainedBytes -= length;
+		final ByteArrayPlane plane = bucket.planes.pop();
+		retained.remove(plane);
+		return plane;
+	}
+
+	/**
+	 * Returns a plane to the pool, for reuse by a later lease. The plane must
+	 * not be used by the caller afterwards. Releasing a plane the pool already
+	 * holds has no effect, so it is never handed to two leases.
+	 *
+	 * @return false if the plane was not retained, because the pool is full or
+	 *         already holds it.
+	 */
+	public synchronized boolean release(final ByteArrayPlane plane) {
+		final int length = plane.getBytes().length;
+		if (retained.contains(plane)) return false;
+		if (retainedBytes + length > maxBytes) return false;
+		Bucket bucket = bucket(length);
+		if (bucket == null) {
+			bucket = new Bucket(length);
+			buckets.add(bucket);
+		}
+		bucket.planes.push(plane);
+		retained.add(plane);
+		retainedBytes += length;
+		return true;
+	}
+
+	/** Drops all retained planes. Lease counts are retained. */
+	public synchronized void clear() {
+		buckets.clear();
+		retained.clear();
+		retainedBytes = 0;
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/** @return the number of bytes of planes currently held by the pool. */
+	public synchronized long getRetainedBytes() {
+		return retainedBytes;
+	}
+
+	/** @return the number of leases requested. */
+	public synchronized long getLeaseCount() {
+		return leases;
+	}
+
+	/** @return the number of leases served with a released plane. */
+	public synchronized long getReuseCount() {
+		return reuses;
+	}
+
+	/** @return the fraction of leases served with a released plane. */
+	public synchronized double getReuseRate() {
+		return leases == 0 ? 0 : (double) reuses / leases;
+	}
+
+	// -- Helper methods --
+
+	private Bucket bucket(final int length) {
+		for (int i = 0; i < buckets.size(); i++) {
+			final Bucket bucket = buckets.get(i);
+			if (bucket.length == length) return bucket;
+		}
+		return null;
+	}
+
+	// -- Helper classes --
+
+	private static final class Bucket {
+
+		private final int length;
+
+		private final ArrayDeque<ByteArrayPlane> planes = new ArrayDeque<>();
+
+		private Bucket(final int length) {
+			this.length = length;
+		}
+	}
+
+}
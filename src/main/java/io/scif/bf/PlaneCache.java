@@ -0,0 +1,250 @@
+/*
+ * #%L
+ * SCIFIO Bio-Formats compatibility format.
+ * %%
+ * Copyright (C) 2013 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package io.scif.bf;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An in-memory cache of decoded planes and tiles, bounded by a byte budget
+ * with least-recently-used eviction.
+ * <p>
+ * Entries are keyed by series, resolution level, plane index and region. A
+ * request for a region contained in a cached one is served by copying out of
+ * the cached bytes. The bytes are expected in the layout produced by
+ * {@link loci.formats.IFormatReader#openBytes(int, byte[], int, int, int,
+ * int)}: either one block of interleaved pixels, or one block per
+ * (non-interleaved) RGB channel.
+ * </p>
+ */
+public class PlaneCache {
+
+	// -- Fields --
+
+	private final long maxBytes;
+
+	private long usedBytes;
+
+	private long hits;
+
+	private long misses;
+
+	/** Cached regions, in access order. */
+	private final LinkedHashMap<Region, byte[]> entries = new LinkedHashMap<>(16,
+		0.75f, true);
+
+	/** Cached regions grouped by plane, for sub-region lookups. */
+	private final Map<Region, List<Region>> planes = new HashMap<>();
+
+	// -- Constructors --
+
+	public PlaneCache(final long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	// -- PlaneCache API methods --
+
+	/**
+	 * Copies the given region out of the cache, if it or a region containing it
+	 * is cached.
+	 *
+	 * @param pixelBytes Bytes per pixel within one block of the region (i.e.
+	 *          including interleaved channels).
+	 * @param blocks Number of blocks per region, i.e. the number of
+	 *          non-interleaved RGB channels (1 if interleaved).
+	 * @return true iff {@code dest} was filled from the cache.
+	 */
+	public synchronized boolean get(final int series, final int resolution,
+		final long plane, final int x, final int y, final int w, final int h,
+		final int pixelBytes, final int blocks, final byte[] dest)
+	{
+		final Region region = new Region(series, resolution, plane, x, y, w, h);
+		final byte[] exact = entries.get(region);
+		if (exact != null) {
+			System.arraycopy(exact, 0, dest, 0, exact.length);
+			hits++;
+			return true;
+		}
+		final List<Region> cached = planes.get(region.plane());
+		if (cached != null) {
+			for (final Region r : cached) {
+				if (!r.contains(region)) continue;
+				copyRegion(entries.get(r), r, region, pixelBytes, blocks, dest);
+				hits++;
+				return true;
+			}
+		}
+		misses++;
+		return false;
+	}
+
+	/**
+	 * Caches the first {@code length} bytes of {@code data} as the given region.
+	 * Regions larger than the whole budget are not cached.
+	 */
+	public synchronized void put(final int series, final int resolution,
+		final long plane, final int x, final int y, final int w, final int h,
+		final byte[] data, final int length)
+	{
+		if (length > maxBytes) return;
+		final Region region = new Region(series, resolution, plane, x, y, w, h);
+		final byte[] bytes = new byte[length];
+		System.arraycopy(data, 0, bytes, 0, length);
+		final byte[] previous = entries.put(region, bytes);
+		if (previous != null) usedBytes -= previous.length;
+		else planes.computeIfAbsent(region.plane(), k -> new ArrayList<>()).add(
+			region);
+		usedBytes += length;
+		evict();
+	}
+
+	/** Removes all entries from the cache. Hit and miss counts are retained. */
+	public synchronized void clear() {
+		entries.clear();
+		planes.clear();
+		usedBytes = 0;
+	}
+
+	/** @return the byte budget of this cache. */
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/** @return the number of bytes currently cached. */
+	public synchronized long getUsedBytes() {
+		return usedBytes;
+	}
+
+	/** @return the number of requests served from the cache. */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/** @return the number of requests which were not cached. */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	// -- Helper methods --
+
+	private void evict() {
+		final Iterator<Map.Entry<Region, byte[]>> iter = entries.entrySet()
+			.iterator();
+		while (usedBytes > maxBytes && iter.hasNext()) {
+			final Map.Entry<Region, byte[]> eldest = iter.next();
+			iter.remove();
+			usedBytes -= eldest.getValue().length;
+			final Region region = eldest.getKey();
+			final List<Region> cached = planes.get(region.plane());
+			cached.remove(region);
+			if (cached.isEmpty()) planes.remove(region.plane());
+		}
+	}
+
+	/**
+	 * Copies region {@code dst} out of the bytes of enclosing region
+	 * {@code src}.
+	 */
+	private static void copyRegion(final byte[] srcBytes, final Region src,
+		final Region dst, final int pixelBytes, final int blocks,
+		final byte[] dest)
+	{
+		final int srcBlock = src.w * src.h * pixelBytes;
+		final int dstBlock = dst.w * dst.h * pixelBytes;
+		final int rowBytes = dst.w * pixelBytes;
+		for (int b = 0; b < blocks; b++) {
+			for (int row = 0; row < dst.h; row++) {
+				final int srcOffset = b * srcBlock + ((dst.y - src.y + row) * src.w +
+					dst.x - src.x) * pixelBytes;
+				System.arraycopy(srcBytes, srcOffset, dest, b * dstBlock + row *
+					rowBytes, rowBytes);
+			}
+		}
+	}
+
+	// -- Helper classes --
+
+	/** A rectangular region of one plane. */
+	private static final class Region {
+
+		private final int series;
+
+		private final int resolution;
+
+		private final long plane;
+
+		private final int x, y, w, h;
+
+		private Region(final int series, final int resolution, final long plane,
+			final int x, final int y, final int w, final int h)
+		{
+			this.series = series;
+			this.resolution = resolution;
+			this.plane = plane;
+			this.x = x;
+			this.y = y;
+			this.w = w;
+			this.h = h;
+		}
+
+		/** @return a key identifying the whole plane of this region. */
+		private Region plane() {
+			return new Region(series, resolution, plane, 0, 0, -1, -1);
+		}
+
+		private boolean contains(final Region r) {
+			return r.x >= x && r.y >= y && r.x + r.w <= x + w && r.y + r.h <= y + h;
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			if (!(o instanceof Region)) return false;
+			final Region r = (Region) o;
+			return series == r.series && resolution == r.resolution &&
+				plane == r.plane && x == r.x && y == r.y && w == r.w && h == r.h;
+		}
+
+		@Override
+		public int hashCode() {
+			int hash = 31 * series + resolution;
+			hash = 31 * hash + Long.hashCode(plane);
+			hash = 31 * hash + x;
+			hash = 31 * hash + y;
+			hash = 31 * hash + w;
+			return 31 * hash + h;
+		}
+	}
+
+}
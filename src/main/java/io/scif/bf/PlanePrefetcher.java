@@ -0,0 +1,211 @@
+/*
+ * #%L
+ * SCIFIO Bio-Formats compatibility format.
+ * %%
+ * Copyright (C) 2013 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package io.scif.bf;
+
+import io.scif.ByteArrayPlane;
+import io.scif.FormatException;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.imglib2.Interval;
+
+/**
+ * Opens planes of one dataset asynchronously, prefetching ahead of sequential
+ * access.
+ * <p>
+ * Planes are read on a shared pool of daemon threads. Once two consecutive
+ * requests for the same image and region step through the plane indices with
+ * the same stride - e.g. along Z, C or T - the next planes along that stride
+ * are read ahead into a buffer of bounded depth, so that subsequent requests
+ * find them ready.
+ * </p>
+ */
+public class PlanePrefetcher {
+
+	// -- Static fields --
+
+	/** Daemon threads reading planes asynchronously. */
+	private static ExecutorService readService;
+
+	// -- Fields --
+
+	private final int depth;
+
+	/** Planes read ahead, by plane index, oldest first. */
+	private final Map<Long, CompletableFuture<ByteArrayPlane>> buffer =
+		new LinkedHashMap<>();
+
+	/** Image and region the buffered planes belong to. */
+	private int imageIndex = -1;
+
+	private long[] min, max;
+
+	/** Previously requested plane index, or -1. */
+	private long last = -1;
+
+	/** Difference between the previous two requested plane indices. */
+	private long stride;
+
+	// -- Constructor --
+
+	/**
+	 * Creates a prefetcher reading up to {@code depth} planes ahead. A depth of
+	 * zero disables prefetching.
+	 */
+	public PlanePrefetcher(final int depth) {
+		this.depth = Math.max(0, depth);
+	}
+
+	// -- PlanePrefetcher API methods --
+
+	/** @return the maximum number of planes read ahead. */
+	public int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * Opens the given plane asynchronously, from the prefetch buffer if it is
+	 * there, and prefetches the planes following it if access is sequential.
+	 *
+	 * @param planeCount the number of planes of the image, bounding prefetches.
+	 * @param source reads a plane of the image, on a background thread.
+	 */
+	public synchronized CompletableFuture<ByteArrayPlane> open(
+		final int imageIndex, final long planeIndex, final Interval bounds,
+		final long planeCount, final PlaneSource source)
+	{
+		if (!isRegion(imageIndex, bounds)) reset(imageIndex, bounds);
+
+		CompletableFuture<ByteArrayPlane> plane = buffer.remove(planeIndex);
+		if (plane == null) plane = submit(imageIndex, planeIndex, bounds, source);
+
+		final long delta = planeIndex - last;
+		if (last >= 0 && delta != 0 && delta == stride) {
+			for (int k = 1; k <= depth; k++) {
+				final long next = planeIndex + k * delta;
+				if (next < 0 || next >= planeCount) break;
+				if (!buffer.containsKey(next)) {
+					buffer.put(next, submit(imageIndex, next, bounds, source));
+				}
+			}
+			evict();
+		}
+		stride = last >= 0 ? delta : 0;
+		last = planeIndex;
+		return plane;
+	}
+
+	/** Discards all prefetched planes. */
+	public synchronized void clear() {
+		for (final CompletableFuture<ByteArrayPlane> plane : buffer.values()) {
+			plane.cancel(false);
+		}
+		buffer.clear();
+		last = -1;
+		stride = 0;
+	}
+
+	// -- Helper methods --
+
+	private static CompletableFuture<ByteArrayPlane> submit(
+		final int imageIndex, final long planeIndex, final Interval bounds,
+		final PlaneSource source)
+	{
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				return source.open(imageIndex, planeIndex, bounds);
+			}
+			catch (final FormatException | IOException e) {
+				throw new CompletionException(e);
+			}
+		}, readService());
+	}
+
+	/** Drops the oldest prefetched planes beyond the buffer depth. */
+	private void evict() {
+		final Iterator<CompletableFuture<ByteArrayPlane>> iter = buffer.values()
+			.iterator();
+		for (int excess = buffer.size() - depth; excess > 0; excess--) {
+			iter.next().cancel(false);
+			iter.remove();
+		}
+	}
+
+	private boolean isRegion(final int imageIndex, final Interval bounds) {
+		if (imageIndex != this.imageIndex || min == null || bounds
+			.numDimensions() != min.length) return false;
+		for (int d = 0; d < min.length; d++) {
+			if (bounds.min(d) != min[d] || bounds.max(d) != max[d]) return false;
+		}
+		return true;
+	}
+
+	private void reset(final int imageIndex, final Interval bounds) {
+		clear();
+		this.imageIndex = imageIndex;
+		min = new long[bounds.numDimensions()];
+		max = new long[bounds.numDimensions()];
+		bounds.min(min);
+		bounds.max(max);
+	}
+
+	private static synchronized ExecutorService readService() {
+		if (readService == null) {
+			final AtomicInteger threads = new AtomicInteger();
+			readService = Executors.newFixedThreadPool(Runtime.getRuntime()
+				.availableProcessors(), r -> {
+					final Thread t = new Thread(r, "scifio-bf-read-" + threads
+						.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				});
+		}
+		return readService;
+	}
+
+	// -- Helper classes --
+
+	/** Reads a plane of the dataset. */
+	public interface PlaneSource {
+
+		ByteArrayPlane open(int imageIndex, long planeIndex, Interval bounds)
+			throws FormatException, IOException;
+	}
+
+}
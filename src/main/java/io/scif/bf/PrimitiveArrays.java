@@ -0,0 +1,103 @@
+/*
+ * #%L
+ * SCIFIO Bio-Formats compatibility format.
+ * %%
+ * Copyright (C) 2013 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package io.scif.bf;
+
+import io.scif.util.FormatTools;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Utility methods for decoding raw plane bytes into primitive arrays.
+ */
+public final class PrimitiveArrays {
+
+	// -- Constructors --
+
+	private PrimitiveArrays() {
+		// NB: prevent instantiation of utility class.
+	}
+
+	// -- Utility methods --
+
+	/**
+	 * Decodes the given bytes into a primitive array of the given pixel type:
+	 * {@code byte[]} for 1-bit and 8-bit types, {@code short[]} for 16-bit types,
+	 * {@code int[]} for 32-bit integer types, {@code float[]} and
+	 * {@code double[]}. Unsigned types are stored in the signed array of the same
+	 * width, as ImgLib2 does.
+	 * <p>
+	 * Each value is decoded exactly once, in a single bulk transfer; when the
+	 * data is already in native byte order, this is a plain memory copy. 8-bit
+	 * data is returned as is, without copying.
+	 * </p>
+	 *
+	 * @param bytes The raw pixel data.
+	 * @param pixelType The {@link FormatTools} pixel type of the data.
+	 * @param little Whether the data is little-endian.
+	 */
+	public static Object decode(final byte[] bytes, final int pixelType,
+		final boolean little)
+	{
+		final ByteBuffer buf = ByteBuffer.wrap(bytes).order(little
+			? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+		final int bpp = FormatTools.getBytesPerPixel(pixelType);
+		final int count = bytes.length / bpp;
+		switch (pixelType) {
+			case FormatTools.INT16:
+			case FormatTools.UINT16: {
+				final short[] values = new short[count];
+				buf.asShortBuffer().get(values);
+				return values;
+			}
+			case FormatTools.INT32:
+			case FormatTools.UINT32: {
+				final int[] values = new int[count];
+				buf.asIntBuffer().get(values);
+				return values;
+			}
+			case FormatTools.FLOAT: {
+				final float[] values = new float[count];
+				buf.asFloatBuffer().get(values);
+				return values;
+			}
+			case FormatTools.DOUBLE: {
+				final double[] values = new double[count];
+				buf.asDoubleBuffer().get(values);
+				return values;
+			}
+			default:
+				// NB: 1-bit and 8-bit data is already in its final form.
+				return bytes;
+		}
+	}
+
+}
@@ -0,0 +1,97 @@
+/*
+ * #%L
+ * SCIFIO Bio-Formats compatibility format.
+ * %%
+ * Copyright (C) 2013 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package io.scif.bf;
+
+import net.imglib2.display.ColorTable;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.util.Binning;
+
+/**
+ * A 16-bit {@link ColorTable} ramping linearly from black to a single RGB
+ * color. Entries are computed on lookup from the color, rather than stored,
+ * so the table takes constant memory regardless of its length.
+ */
+public class RampColorTable implements ColorTable {
+
+	// -- Constants --
+
+	private static final int LENGTH = 65536;
+
+	// -- Fields --
+
+	/** The 8-bit red, green and blue components of the color. */
+	private final int[] rgb;
+
+	// -- Constructor --
+
+	/** Creates a ramp to the given 8-bit color components. */
+	public RampColorTable(final int red, final int green, final int blue) {
+		rgb = new int[] { red & 0xff, green & 0xff, blue & 0xff };
+	}
+
+	// -- ColorTable API methods --
+
+	@Override
+	public int lookupARGB(final double min, final double max,
+		final double value)
+	{
+		final int bin = Binning.valueToBin(LENGTH, min, max, value);
+		return ARGBType.rgba(rgb[0] * bin / (LENGTH - 1), rgb[1] * bin /
+			(LENGTH - 1), rgb[2] * bin / (LENGTH - 1), 0xff);
+	}
+
+	@Override
+	public int getComponentCount() {
+		return rgb.length;
+	}
+
+	@Override
+	public int getLength() {
+		return LENGTH;
+	}
+
+	/**
+	 * Gets the 16-bit value of the given component at the given bin, i.e. the
+	 * 8-bit component scaled up to 16 bits, times the bin's fraction of the
+	 * ramp.
+	 */
+	@Override
+	public int get(final int comp, final int bin) {
+		// NB: scaling by 257 maps 8 bits onto 16, and 257 / 65535 == 1 / 255.
+		return rgb[comp] * bin / 255;
+	}
+
+	@Override
+	public int getResampled(final int comp, final int bins, final int bin) {
+		return get(comp, (int) ((long) LENGTH * bin / bins));
+	}
+
+}
@@ -0,0 +1,412 @@
+/*
+ * #%L
+ * SCIFIO Bio-Formats compatibility format.
+ * %%
+ * Copyright (C) 2013 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package io.scif.bf;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import loci.common.RandomAccessInputStream;
+import loci.formats.FormatHandler;
+import loci.formats.FormatReader;
+import loci.formats.IFormatReader;
+import loci.formats.ImageReader;
+
+/**
+ * Index from file suffixes to the Bio-Formats readers declaring them, used to
+ * try the likely readers of a file before falling back to asking every
+ * reader of an {@link ImageReader} in turn.
+ * <p>
+ * Many readers open the file to sniff its header, so trying the suffix
+ * candidates first saves a lot of I/O when checking large numbers of files.
+ * The answers are the same as {@link ImageReader#isThisType(String, boolean)}.
+ * </p>
+ */
+public class ReaderIndex {
+
+	// -- Constants --
+
+	/**
+	 * Maximum number of readers asked at once by parallel detection. Detection
+	 * is mostly waiting on I/O, so this exceeds the number of processors.
+	 */
+	private static final int DETECTION_THREADS = 2 * Runtime.getRuntime()
+		.availableProcessors();
+
+	// -- Static fields --
+
+	/** Daemon threads running {@link #detect parallel detection} tasks. */
+	private static ThreadPoolExecutor detectionService;
+
+	// -- Fields --
+
+	/** The readers of the indexed {@link ImageReader}, in priority order. */
+	private final IFormatReader[] readers;
+
+	/** Positions in {@link #readers} of the readers declaring each suffix. */
+	private final Map<String, int[]> suffixes = new HashMap<>();
+
+	/**
+	 * Whether each reader decides by the standard suffix checks of
+	 * {@link FormatReader#isThisType(String, boolean)} and its stream check
+	 * alone, so it can be asked about an already open stream.
+	 */
+	private final boolean[] sniffable;
+
+	/** The {@code suffixNecessary} flag of each sniffable reader. */
+	private final boolean[] suffixNecessary;
+
+	/** The {@code suffixSufficient} flag of each sniffable reader. */
+	private final boolean[] suffixSufficient;
+
+	// -- Constructors --
+
+	public ReaderIndex(final ImageReader reader) {
+		readers = reader.getReaders();
+		final Map<String, List<Integer>> positions = new HashMap<>();
+		for (int i = 0; i < readers.length; i++) {
+			for (final String suffix : readers[i].getSuffixes()) {
+				final List<Integer> list = positions.computeIfAbsent(key(suffix),
+					k -> new ArrayList<>());
+				if (!list.contains(i)) list.add(i);
+			}
+		}
+		for (final Map.Entry<String, List<Integer>> e : positions.entrySet()) {
+			final List<Integer> list = e.getValue();
+			final int[] indices = new int[list.size()];
+			for (int i = 0; i < indices.length; i++) {
+				indices[i] = list.get(i);
+			}
+			suffixes.put(e.getKey(), indices);
+		}
+		sniffable = new boolean[readers.length];
+		suffixNecessary = new boolean[readers.length];
+		suffixSufficient = new boolean[readers.length];
+		for (int i = 0; i < readers.length; i++) {
+			if (overridesNameCheck(readers[i])) continue;
+			try {
+				suffixNecessary[i] = flag(readers[i], "suffixNecessary");
+				suffixSufficient[i] = flag(readers[i], "suffixSufficient");
+				sniffable[i] = true;
+			}
+			catch (final ReflectiveOperationException | RuntimeException e) {
+				// NB: ask the reader by name instead.
+			}
+		}
+	}
+
+	// -- ReaderIndex API methods --
+
+	/** @return the indexed readers, in priority order. */
+	public IFormatReader[] getReaders() {
+		return readers;
+	}
+
+	/**
+	 * Gets the readers declaring a suffix of the given file name, in priority
+	 * order. For {@code "a.ome.tif"}, readers of both {@code "ome.tif"} and
+	 * {@code "tif"} are candidates.
+	 */
+	public List<IFormatReader> getCandidates(final String name) {
+		final boolean[] candidate = candidates(name);
+		final List<IFormatReader> list = new ArrayList<>();
+		for (int i = 0; i < readers.length; i++) {
+			if (candidate[i]) list.add(readers[i]);
+		}
+		return list;
+	}
+
+	/**
+	 * As {@link ImageReader#isThisType(String, boolean)}, but asks the
+	 * {@link #getCandidates(String) candidate readers} of the file first. Each
+	 * reader is asked at most once.
+	 */
+	public boolean isThisType(final String name, final boolean open) {
+		final boolean[] candidate = candidates(name);
+		for (int i = 0; i < readers.length; i++) {
+			if (candidate[i] && readers[i].isThisType(name, open)) return true;
+		}
+		for (int i = 0; i < readers.length; i++) {
+			if (!candidate[i] && readers[i].isThisType(name, open)) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * As {@link #isThisType(String, boolean) isThisType(name, true)}, but
+	 * checks the content of the file through the given (already open) stream,
+	 * rather than each reader opening the file again. Readers with their own
+	 * name-based logic, i.e. overriding
+	 * {@link FormatReader#isThisType(String, boolean)}, are still asked by
+	 * name, and may open the file themselves.
+	 */
+	public boolean isThisType(final String name,
+		final RandomAccessInputStream stream)
+	{
+		final boolean[] candidate = candidates(name);
+		final boolean little = stream.isLittleEndian();
+		for (int i = 0; i < readers.length; i++) {
+			if (candidate[i] && probe(i, name, stream, little)) return true;
+		}
+		for (int i = 0; i < readers.length; i++) {
+			if (!candidate[i] && probe(i, name, stream, little)) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * As {@link #isThisType(String, boolean)}, but asks the readers in
+	 * parallel, candidates first, giving up after the given time budget.
+	 *
+	 * @throws InterruptedIOException if the time budget ran out before any
+	 *           reader accepted the file and all readers answered, or if the
+	 *           calling thread was interrupted.
+	 */
+	public boolean isThisType(final String name, final boolean open,
+		final long timeoutMillis) throws InterruptedIOException
+	{
+		return isThisType(name, reader -> reader.isThisType(name, open),
+			timeoutMillis);
+	}
+
+	/**
+	 * As {@link #isThisType(String, boolean, long)}, but asks each reader
+	 * through the given probe. The probe runs on a detection thread, so it must
+	 * set up any thread-bound state the reader needs, such as an entry in
+	 * Bio-Formats' (thread-local) id map.
+	 *
+	 * @param name Name of the file, to find the candidate readers.
+	 * @throws InterruptedIOException if the time budget ran out before any
+	 *           reader accepted the file and all readers answered, or if the
+	 *           calling thread was interrupted.
+	 */
+	public boolean isThisType(final String name, final Probe probe,
+		final long timeoutMillis) throws InterruptedIOException
+	{
+		final boolean[] candidate = candidates(name);
+		final List<Integer> positions = new ArrayList<>(readers.length);
+		for (int i = 0; i < readers.length; i++) {
+			if (candidate[i]) positions.add(i);
+		}
+		for (int i = 0; i < readers.length; i++) {
+			if (!candidate[i]) positions.add(i);
+		}
+		return detect(positions, probe, timeoutMillis);
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Asks the given readers through the given probe, in parallel, until one
+	 * accepts the file. All readers still running are then cancelled.
+	 *
+	 * @param positions Positions of the readers to ask, in submission order.
+	 * @param timeoutMillis Time budget for the whole detection; when exhausted,
+	 *          all pending readers are cancelled.
+	 */
+	private boolean detect(final List<Integer> positions, final Probe probe,
+		final long timeoutMillis) throws InterruptedIOException
+	{
+		final int count = positions.size();
+		if (count == 0) return false;
+		final ThreadPoolExecutor executor = detectionService();
+		final CompletionService<Boolean> completion =
+			new ExecutorCompletionService<>(executor);
+		final List<Future<Boolean>> futures = new ArrayList<>(count);
+		for (final int i : positions) {
+			final IFormatReader reader = readers[i];
+			futures.add(completion.submit(() -> {
+				try {
+					return probe.isThisType(reader);
+				}
+				catch (final IOException | RuntimeException e) {
+					return false;
+				}
+			}));
+		}
+
+		final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(
+			timeoutMillis);
+		try {
+			for (int answered = 0; answered < count; answered++) {
+				final Future<Boolean> done = completion.poll(deadline - System
+					.nanoTime(), TimeUnit.NANOSECONDS);
+				if (done == null) {
+					throw timedOut(positions, futures, timeoutMillis, executor);
+				}
+				if (done.get()) return true;
+			}
+			return false;
+		}
+		catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted during format detection");
+		}
+		catch (final ExecutionException e) {
+			// NB: tasks catch their own exceptions.
+			return false;
+		}
+		finally {
+			for (final Future<Boolean> future : futures) {
+				future.cancel(true);
+			}
+		}
+	}
+
+	/**
+	 * Describes a timed out detection: the readers which did not answer, and
+	 * how many detection threads are busy. Readers which ignore cancellation
+	 * keep their threads, and once all are taken, every detection times out.
+	 */
+	private InterruptedIOException timedOut(final List<Integer> positions,
+		final List<Future<Boolean>> futures, final long timeoutMillis,
+		final ThreadPoolExecutor executor)
+	{
+		final StringBuilder pending = new StringBuilder();
+		for (int k = 0; k < futures.size(); k++) {
+			if (futures.get(k).isDone()) continue;
+			if (pending.length() > 0) pending.append(", ");
+			pending.append(readers[positions.get(k)].getFormat());
+		}
+		final int busy = executor.getActiveCount();
+		return new InterruptedIOException("Format detection timed out after " +
+			timeoutMillis + " ms, awaiting " + pending + " (" + busy + " of " +
+			executor.getMaximumPoolSize() + " detection threads busy)");
+	}
+
+	/**
+	 * Asks the {@code i}th reader about the given name and stream, as
+	 * {@link FormatReader#isThisType(String, boolean)} would with the file open.
+	 */
+	private boolean probe(final int i, final String name,
+		final RandomAccessInputStream stream, final boolean little)
+	{
+		final IFormatReader reader = readers[i];
+		if (!sniffable[i]) return reader.isThisType(name, true);
+		if (suffixNecessary[i] || suffixSufficient[i]) {
+			final boolean match = FormatHandler.checkSuffix(name, reader
+				.getSuffixes());
+			if (suffixNecessary[i] && !match) return false;
+			if (match && suffixSufficient[i]) return true;
+		}
+		try {
+			stream.seek(0);
+			stream.order(little);
+			return reader.isThisType(stream);
+		}
+		catch (final IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * @return true iff the given reader does not use the name checks of
+	 *         {@link FormatReader#isThisType(String, boolean)} unchanged.
+	 */
+	private static boolean overridesNameCheck(final IFormatReader reader) {
+		try {
+			return reader.getClass().getMethod("isThisType", String.class,
+				boolean.class).getDeclaringClass() != FormatReader.class;
+		}
+		catch (final NoSuchMethodException e) {
+			return true;
+		}
+	}
+
+	/** Reads a (protected) flag of a {@link FormatReader}. */
+	private static boolean flag(final IFormatReader reader, final String name)
+		throws ReflectiveOperationException
+	{
+		final Field field = FormatReader.class.getDeclaredField(name);
+		field.setAccessible(true);
+		return field.getBoolean(reader);
+	}
+
+	private static synchronized ThreadPoolExecutor detectionService() {
+		if (detectionService == null) {
+			final AtomicInteger threads = new AtomicInteger();
+			// NB: bounded, since readers stuck in CPU-bound loops ignore
+			// cancellation and keep their threads.
+			detectionService = new ThreadPoolExecutor(DETECTION_THREADS,
+				DETECTION_THREADS, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+				r -> {
+					final Thread t = new Thread(r, "scifio-bf-detection-" + threads
+						.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				});
+			detectionService.allowCoreThreadTimeOut(true);
+		}
+		return detectionService;
+	}
+
+	/** Flags the readers declaring any suffix of the given name. */
+	private boolean[] candidates(final String name) {
+		final boolean[] candidate = new boolean[readers.length];
+		final int slash = Math.max(name.lastIndexOf('/'), name.lastIndexOf('\\'));
+		for (int dot = name.indexOf('.', slash + 1); dot >= 0; dot = name.indexOf(
+			'.', dot + 1))
+		{
+			final int[] indices = suffixes.get(key(name.substring(dot + 1)));
+			if (indices == null) continue;
+			for (final int i : indices) {
+				candidate[i] = true;
+			}
+		}
+		return candidate;
+	}
+
+	private static String key(final String suffix) {
+		return suffix.toLowerCase(Locale.ENGLISH);
+	}
+
+	// -- Helper classes --
+
+	/** Asks a reader whether it can handle a file. */
+	@FunctionalInterface
+	public interface Probe {
+
+		boolean isThisType(IFormatReader reader) throws IOException;
+	}
+}
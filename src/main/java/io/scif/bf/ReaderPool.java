@@ -0,0 +1,243 @@
+/*
+ * #%L
+ * SCIFIO Bio-Formats compatibility format.
+ * %%
+ * Copyright (C) 2013 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package io.scif.bf;
+
+import io.scif.FormatException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import loci.formats.IFormatReader;
+
+/**
+ * A bounded pool of Bio-Formats readers, all initialized on the same dataset.
+ * <p>
+ * Bio-Formats readers are stateful ({@code setSeries}, file pointers, ...) and
+ * thus can not be shared between threads. Each thread wishing to access pixel
+ * data {@link #borrow() borrows} a reader from the pool and
+ * {@link #release(IFormatReader) releases} it when done. Additional readers
+ * are created on demand by a {@link ReaderFactory}, up to the maximum pool
+ * size; beyond that, callers block until a reader becomes available.
+ * </p>
+ * <p>
+ * The primary reader (the one used to parse the dataset) is always part of
+ * the pool and is the only one guaranteed to carry the full metadata store.
+ * It is reentrant: a thread already holding it receives it again from
+ * {@link #borrow()} and {@link #borrowPrimary()} instead of blocking.
+ * </p>
+ */
+public class ReaderPool {
+
+	// -- Fields --
+
+	private final IFormatReader primary;
+
+	private final ReaderFactory factory;
+
+	private final int maxSize;
+
+	/** Readers which are currently not borrowed. */
+	private final Deque<IFormatReader> idle = new ArrayDeque<>();
+
+	/** Readers created by the factory. */
+	private final List<IFormatReader> created = new ArrayList<>();
+
+	/** Number of readers currently being created by the factory. */
+	private int pending;
+
+	/** Thread currently holding the primary reader, if any. */
+	private Thread primaryOwner;
+
+	/** Number of times the primary reader is held by its owner. */
+	private int primaryHolds;
+
+	// -- Constructors --
+
+	/** Creates a pool holding only the given reader. */
+	public ReaderPool(final IFormatReader primary) {
+		this(primary, null, 1);
+	}
+
+	/**
+	 * Creates a pool around the given primary reader, creating up to
+	 * {@code maxSize - 1} additional readers using the given factory.
+	 */
+	public ReaderPool(final IFormatReader primary, final ReaderFactory factory,
+		final int maxSize)
+	{
+		this.primary = primary;
+		this.factory = factory;
+		this.maxSize = factory == null ? 1 : Math.max(1, maxSize);
+		idle.add(primary);
+	}
+
+	// -- ReaderPool API methods --
+
+	/** @return the reader used to parse the dataset. */
+	public IFormatReader getPrimary() {
+		return primary;
+	}
+
+	/** @return the maximum number of readers in this pool. */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Borrows a reader from this pool, creating a new one or waiting for one to
+	 * be released if none is idle. Callers must {@link #release} the reader when
+	 * finished with it.
+	 */
+	public IFormatReader borrow() throws FormatException, IOException {
+		synchronized (this) {
+			if (primaryOwner == Thread.currentThread()) return holdPrimary();
+			while (idle.isEmpty()) {
+				if (size() < maxSize) {
+					pending++;
+					break;
+				}
+				await();
+			}
+			if (!idle.isEmpty()) {
+				final IFormatReader reader = idle.removeFirst();
+				return reader == primary ? holdPrimary() : reader;
+			}
+		}
+		// NB: create the new reader outside of the lock, since initializing a
+		// reader is slow and must not block other borrowers.
+		IFormatReader reader = null;
+		try {
+			reader = factory.create();
+		}
+		catch (final loci.formats.FormatException e) {
+			throw new FormatException(e);
+		}
+		finally {
+			synchronized (this) {
+				pending--;
+				if (reader != null) created.add(reader);
+				notifyAll();
+			}
+		}
+		return reader;
+	}
+
+	/**
+	 * Borrows the primary reader of this pool, waiting for it to be released if
+	 * another thread is using it. Needed for anything which depends on the full
+	 * metadata store populated during parsing.
+	 */
+	public synchronized IFormatReader borrowPrimary() throws IOException {
+		if (primaryOwner != Thread.currentThread()) {
+			while (!idle.remove(primary)) {
+				await();
+			}
+		}
+		return holdPrimary();
+	}
+
+	/** Returns a reader obtained by {@link #borrow()} to the pool. */
+	public synchronized void release(final IFormatReader reader) {
+		if (reader == null) return;
+		if (reader == primary) {
+			if (--primaryHolds > 0) return;
+			primaryOwner = null;
+			// NB: favor the primary reader, which is always initialized.
+			idle.addFirst(reader);
+			notifyAll();
+		}
+		else if (created.contains(reader)) {
+			idle.addLast(reader);
+			notifyAll();
+		}
+		else {
+			closeQuietly(reader);
+		}
+	}
+
+	/**
+	 * Closes all readers created by this pool. The primary reader is left
+	 * untouched, as it belongs to the {@link BioFormatsFormat.Metadata}. Readers
+	 * still borrowed at this point are closed when they are released; the pool
+	 * itself remains usable.
+	 */
+	public synchronized void close() {
+		for (final IFormatReader reader : created) {
+			if (idle.remove(reader)) closeQuietly(reader);
+		}
+		created.clear();
+	}
+
+	// -- Helper methods --
+
+	private IFormatReader holdPrimary() {
+		primaryOwner = Thread.currentThread();
+		primaryHolds++;
+		return primary;
+	}
+
+	private int size() {
+		return 1 + created.size() + pending;
+	}
+
+	private void await() throws InterruptedIOException {
+		try {
+			wait();
+		}
+		catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException(
+				"Interrupted while waiting for a Bio-Formats reader");
+		}
+	}
+
+	private static void closeQuietly(final IFormatReader reader) {
+		try {
+			reader.close();
+		}
+		catch (final IOException e) {
+			// ignore
+		}
+	}
+
+	// -- Helper classes --
+
+	/** Creates additional readers initialized on the pooled dataset. */
+	public interface ReaderFactory {
+
+		IFormatReader create() throws loci.formats.FormatException, IOException;
+	}
+
+}
@@ -0,0 +1,191 @@
+/*
+ * #%L
+ * SCIFIO Bio-Formats compatibility format.
+ * %%
+ * Copyright (C) 2013 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package io.scif.bf;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A fixed-size, long-addressed block of bytes, held off-heap in segments of at
+ * most {@link #SEGMENT_SIZE} bytes each. Unlike a {@code byte[]}, it can hold
+ * more than 2 GB, and does not burden the garbage collected heap.
+ */
+public class SegmentedBuffer {
+
+	// -- Constants --
+
+	/** Default size of each segment but the last. */
+	public static final int SEGMENT_SIZE = 1 << 30;
+
+	// -- Fields --
+
+	private final ByteBuffer[] segments;
+
+	private final long size;
+
+	private final int segmentSize;
+
+	// -- Constructors --
+
+	/** Allocates a zeroed buffer of the given size. */
+	public SegmentedBuffer(final long size) {
+		this(size, SEGMENT_SIZE);
+	}
+
+	/** Allocates a zeroed buffer of the given size, in the given segments. */
+	SegmentedBuffer(final long size, final int segmentSize) {
+		if (size < 0) throw new IllegalArgumentException("Invalid size: " + size);
+		if (segmentSize <= 0) {
+			throw new IllegalArgumentException("Invalid segment size: " +
+				segmentSize);
+		}
+		this.size = size;
+		this.segmentSize = segmentSize;
+		segments = new ByteBuffer[(int) ((size + segmentSize - 1) /
+			segmentSize)];
+		for (int s = 0; s < segments.length; s++) {
+			segments[s] = ByteBuffer.allocateDirect((int) Math.min(segmentSize,
+				size - (long) s * segmentSize));
+		}
+	}
+
+	// -- SegmentedBuffer API methods --
+
+	/** @return the number of bytes in the buffer. */
+	public long size() {
+		return size;
+	}
+
+	public int getSegmentCount() {
+		return segments.length;
+	}
+
+	/** @return the size of each segment but the last. */
+	public int getSegmentSize() {
+		return segmentSize;
+	}
+
+	/**
+	 * Gets a view of the given segment, which starts at byte
+	 * {@code segment * getSegmentSize()} of the buffer. The view has its own
+	 * position and limit.
+	 */
+	public ByteBuffer getSegment(final int segment) {
+		return segments[segment].duplicate();
+	}
+
+	/** @return the byte at the given index. */
+	public byte get(final long index) {
+		checkRange(index, 1);
+		return segments[(int) (index / segmentSize)].get((int) (index %
+			segmentSize));
+	}
+
+	/** Copies {@code length} bytes starting at {@code index} into an array. */
+	public void get(final long index, final byte[] dest, final int offset,
+		final int length)
+	{
+		checkRange(index, length);
+		long pos = index;
+		int off = offset;
+		int remaining = length;
+		while (remaining > 0) {
+			final ByteBuffer segment = segments[(int) (pos / segmentSize)]
+				.duplicate();
+			segment.position((int) (pos % segmentSize));
+			final int n = Math.min(remaining, segment.remaining());
+			segment.get(dest, off, n);
+			pos += n;
+			off += n;
+			remaining -= n;
+		}
+	}
+
+	/** Copies {@code length} bytes from an array to {@code index} onwards. */
+	public void put(final long index, final byte[] src, final int offset,
+		final int length)
+	{
+		checkRange(index, length);
+		long pos = index;
+		int off = offset;
+		int remaining = length;
+		while (remaining > 0) {
+			final ByteBuffer segment = segments[(int) (pos / segmentSize)]
+				.duplicate();
+			segment.position((int) (pos % segmentSize));
+			final int n = Math.min(remaining, segment.remaining());
+			segment.put(src, off, n);
+			pos += n;
+			off += n;
+			remaining -= n;
+		}
+	}
+
+	/**
+	 * Copies a region of a plane into the same region of the plane held in this
+	 * buffer. Both are laid out as by
+	 * {@link loci.formats.IFormatReader#openBytes(int, byte[], int, int, int,
+	 * int)}: one block of pixels per (non-interleaved) channel, or a single
+	 * block of interleaved pixels.
+	 *
+	 * @param src The pixels of the region.
+	 * @param x The column of the region within the plane.
+	 * @param y The row of the region within the plane.
+	 * @param w The width of the region.
+	 * @param h The height of the region.
+	 * @param width The width of the plane.
+	 * @param height The height of the plane.
+	 * @param pixelBytes Bytes per pixel within one block.
+	 * @param blocks Number of blocks.
+	 */
+	public void putRegion(final byte[] src, final int x, final int y,
+		final int w, final int h, final int width, final int height,
+		final int pixelBytes, final int blocks)
+	{
+		final long blockBytes = (long) width * height * pixelBytes;
+		final int rowBytes = w * pixelBytes;
+		for (int b = 0; b < blocks; b++) {
+			for (int row = 0; row < h; row++) {
+				put(b * blockBytes + ((long) (y + row) * width + x) * pixelBytes, src,
+					(b * h + row) * rowBytes, rowBytes);
+			}
+		}
+	}
+
+	// -- Helper methods --
+
+	private void checkRange(final long index, final long length) {
+		if (index < 0 || length < 0 || index + length > size) {
+			throw new IndexOutOfBoundsException("Range [" + index + ", " + (index +
+				length) + ") not within [0, " + size + ")");
+		}
+	}
+
+}
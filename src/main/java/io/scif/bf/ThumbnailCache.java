@@ -0,0 +1,199 @@
+/*
+ * #%L
+ * SCIFIO Bio-Formats compatibility format.
+ * %%
+ * Copyright (C) 2013 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package io.scif.bf;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of the thumbnails of one dataset, keyed by series and plane index.
+ * <p>
+ * Thumbnails are kept in memory, up to a maximum number, and optionally also
+ * written to a directory on disk, so they survive the dataset being closed.
+ * On-disk thumbnails are keyed by the dataset's path, length and modification
+ * time, so a changed file does not serve stale thumbnails, and by the reader
+ * options which determine the numbering of its series.
+ * </p>
+ * <p>
+ * The cache keeps its own copies of the thumbnails, and hands out copies, so
+ * callers may modify the arrays they put or get.
+ * </p>
+ */
+public class ThumbnailCache {
+
+	// -- Constants --
+
+	/** Default maximum number of thumbnails kept in memory. */
+	public static final int DEFAULT_MAX_ENTRIES = 256;
+
+	// -- Fields --
+
+	private final Map<String, byte[]> thumbs;
+
+	/** Directory holding on-disk thumbnails, or null for memory only. */
+	private final File directory;
+
+	/** File name prefix identifying the dataset in {@link #directory}. */
+	private final String prefix;
+
+	// -- Constructors --
+
+	/** Creates a cache keeping up to {@code maxEntries} thumbnails in memory. */
+	public ThumbnailCache(final int maxEntries) {
+		this(maxEntries, null, null);
+	}
+
+	/**
+	 * Creates a cache keeping up to {@code maxEntries} thumbnails in memory and
+	 * all thumbnails of the given dataset file in the given directory. If either
+	 * is null, thumbnails are only kept in memory.
+	 */
+	public ThumbnailCache(final int maxEntries, final File directory,
+		final File dataset)
+	{
+		this(maxEntries, directory, dataset, "");
+	}
+
+	/**
+	 * As {@link #ThumbnailCache(int, File, File)}, for a dataset opened with the
+	 * given reader options. Options which change how the dataset is split into
+	 * series (e.g. file grouping or flattened resolutions) must be included, so
+	 * that opens with different options do not share on-disk thumbnails.
+	 */
+	public ThumbnailCache(final int maxEntries, final File directory,
+		final File dataset, final String options)
+	{
+		thumbs = new LinkedHashMap<String, byte[]>(16, 0.75f, true) {
+
+			@Override
+			protected boolean removeEldestEntry(
+				final Map.Entry<String, byte[]> eldest)
+			{
+				return size() > maxEntries;
+			}
+		};
+		final boolean onDisk = directory != null && dataset != null && dataset
+			.isFile();
+		this.directory = onDisk ? directory : null;
+		prefix = onDisk ? digest(dataset.getAbsolutePath() + "|" + dataset
+			.length() + "|" + dataset.lastModified() + "|" + options) : null;
+	}
+
+	// -- ThumbnailCache API methods --
+
+	/**
+	 * Gets a copy of the cached thumbnail of the given plane, or null if there
+	 * is none.
+	 *
+	 * @throws IOException if an on-disk thumbnail can not be read.
+	 */
+	public byte[] get(final int series, final long plane) throws IOException {
+		final String key = key(series, plane);
+		synchronized (thumbs) {
+			final byte[] thumb = thumbs.get(key);
+			if (thumb != null) return thumb.clone();
+		}
+		if (directory == null) return null;
+		final File file = new File(directory, prefix + key);
+		if (!file.isFile()) return null;
+		final byte[] thumb = Files.readAllBytes(file.toPath());
+		synchronized (thumbs) {
+			thumbs.put(key, thumb.clone());
+		}
+		return thumb;
+	}
+
+	/**
+	 * Caches a copy of the thumbnail of the given plane.
+	 *
+	 * @throws IOException if the thumbnail can not be written to disk. It is
+	 *           still cached in memory.
+	 */
+	public void put(final int series, final long plane, final byte[] thumb)
+		throws IOException
+	{
+		final String key = key(series, plane);
+		synchronized (thumbs) {
+			thumbs.put(key, thumb.clone());
+		}
+		if (directory == null) return;
+		Files.createDirectories(directory.toPath());
+		// NB: write to a temporary file first, so that concurrent readers never
+		// see a partially written thumbnail.
+		final Path tmp = Files.createTempFile(directory.toPath(), prefix, ".tmp");
+		try {
+			Files.write(tmp, thumb);
+			Files.move(tmp, new File(directory, prefix + key).toPath(),
+				StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	/** Removes all thumbnails from memory. On-disk thumbnails are kept. */
+	public void clear() {
+		synchronized (thumbs) {
+			thumbs.clear();
+		}
+	}
+
+	// -- Helper methods --
+
+	private static String key(final int series, final long plane) {
+		return "-s" + series + "-p" + plane + ".thumb";
+	}
+
+	private static String digest(final String s) {
+		try {
+			final byte[] hash = MessageDigest.getInstance("SHA-1").digest(s.getBytes(
+				StandardCharsets.UTF_8));
+			final StringBuilder sb = new StringBuilder();
+			for (final byte b : hash) {
+				sb.append(String.format("%02x", b & 0xff));
+			}
+			return sb.toString();
+		}
+		catch (final NoSuchAlgorithmException e) {
+			// NB: every Java platform is required to support SHA-1.
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
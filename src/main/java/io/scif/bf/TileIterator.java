@@ -0,0 +1,128 @@
+/*
+ * #%L
+ * SCIFIO Bio-Formats compatibility format.
+ * %%
+ * Copyright (C) 2013 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package io.scif.bf;
+
+import io.scif.ImageMetadata;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import net.imagej.axis.Axes;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+
+/**
+ * Walks a plane in tile-aligned blocks, row by row. Each block spans one tile
+ * in X and Y - clipped at the right and bottom edges of the plane - and the
+ * full extent of any other planar axis, so it can be passed as the bounds of
+ * {@link io.scif.Reader#openPlane}.
+ */
+public class TileIterator implements Iterator<Interval> {
+
+	// -- Fields --
+
+	private final long[] min;
+
+	private final long[] max;
+
+	private final int xIndex;
+
+	private final int yIndex;
+
+	private final long tileWidth;
+
+	private final long tileHeight;
+
+	private final long sizeX;
+
+	private final long sizeY;
+
+	/** Position of the next tile. */
+	private long x, y;
+
+	// -- Constructor --
+
+	/**
+	 * Creates an iterator over the planes of the given image, in tiles of the
+	 * given size.
+	 */
+	public TileIterator(final ImageMetadata imgMeta, final long tileWidth,
+		final long tileHeight)
+	{
+		if (tileWidth <= 0 || tileHeight <= 0) {
+			throw new IllegalArgumentException("Invalid tile size: " + tileWidth +
+				"x" + tileHeight);
+		}
+		final int planarAxes = imgMeta.getPlanarAxisCount();
+		min = new long[planarAxes];
+		max = new long[planarAxes];
+		for (int d = 0; d < planarAxes; d++) {
+			max[d] = imgMeta.getAxisLength(d) - 1;
+		}
+		xIndex = imgMeta.getAxisIndex(Axes.X);
+		yIndex = imgMeta.getAxisIndex(Axes.Y);
+		this.tileWidth = tileWidth;
+		this.tileHeight = tileHeight;
+		sizeX = imgMeta.getAxisLength(Axes.X);
+		sizeY = imgMeta.getAxisLength(Axes.Y);
+	}
+
+	// -- TileIterator API methods --
+
+	/** @return the number of tiles in each plane. */
+	public long getTileCount() {
+		return ((sizeX + tileWidth - 1) / tileWidth) * ((sizeY + tileHeight - 1) /
+			tileHeight);
+	}
+
+	// -- Iterator API methods --
+
+	@Override
+	public boolean hasNext() {
+		return y < sizeY && sizeX > 0;
+	}
+
+	@Override
+	public Interval next() {
+		if (!hasNext()) throw new NoSuchElementException();
+		min[xIndex] = x;
+		min[yIndex] = y;
+		max[xIndex] = Math.min(x + tileWidth, sizeX) - 1;
+		max[yIndex] = Math.min(y + tileHeight, sizeY) - 1;
+		x += tileWidth;
+		if (x >= sizeX) {
+			x = 0;
+			y += tileHeight;
+		}
+		return new FinalInterval(min, max);
+	}
+
+}
@@ -30,9 +30,15 @@
 
 package io.scif.bf.wrapper;
 
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
 
 import org.scijava.io.handle.DataHandle;
 import org.scijava.io.location.Location;
@@ -43,22 +49,111 @@ import loci.common.RandomAccessInputStream;
 /**
  * Adapter class to convert {@link DataHandle} to
  * {@link loci.common.RandomAccessInputStream}.
+ * <p>
+ * Reads are served from an in-memory block buffer, which is filled from the
+ * handle one (aligned) block at a time. Bio-Formats readers make a great many
+ * small reads while parsing headers, which would otherwise each go to the
+ * handle. Seeking only moves the file pointer; the buffer is refilled once a
+ * read falls outside of it. Reads of at least one block bypass the buffer.
+ * </p>
+ * <p>
+ * Alternatively, an adapter for a local file can be backed by a memory-mapped
+ * view of the file, split into segments of at most {@link #SEGMENT_SIZE}
+ * bytes. Seeks are then free and reads are plain memory accesses.
+ * </p>
  */
 public class DataHandleAdapter extends RandomAccessInputStream implements
 	IRandomAccess
 {
 
+	// -- Constants --
+
+	/** Default size of the read-ahead block buffer. */
+	public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+
+	/**
+	 * Smallest size of the block buffer: the largest primitive value must fit
+	 * into one block.
+	 */
+	public static final int MIN_BLOCK_SIZE = Long.BYTES;
+
+	/** Size of the memory-mapped segments of a mapped file. */
+	public static final int SEGMENT_SIZE = 1 << 30;
+
+	/**
+	 * Number of bytes by which consecutive mapped segments overlap, so that any
+	 * primitive value lies entirely within one segment.
+	 */
+	private static final int SEGMENT_OVERLAP = 8;
+
 	// -- Fields --
 
 	private final DataHandle<Location> handle;
 
+	/** The read-ahead block buffer, or the current mapped segment. */
+	private ByteBuffer buffer;
+
+	/** Memory-mapped segments of the file, or null if not mapped. */
+	private final ByteBuffer[] segments;
+
+	/** File offset of the first byte in {@link #buffer}. */
+	private long bufferStart;
+
+	/** Current file pointer. */
+	private long pos;
+
 	// -- Constructors --
 
 	public DataHandleAdapter(final DataHandle<Location> handle)
 		throws IOException
+	{
+		this(handle, DEFAULT_BLOCK_SIZE);
+	}
+
+	/**
+	 * Creates an adapter buffering reads in blocks of the given size, or of
+	 * {@link #MIN_BLOCK_SIZE} if smaller. The minimum block size effectively
+	 * disables buffering.
+	 */
+	public DataHandleAdapter(final DataHandle<Location> handle,
+		final int blockSize) throws IOException
+	{
+		super(new byte[1]);
+		this.handle = handle;
+		segments = null;
+		buffer = ByteBuffer.allocate(Math.max(MIN_BLOCK_SIZE, blockSize));
+		buffer.limit(0);
+		buffer.order(getOrder());
+		pos = handle.offset();
+	}
+
+	/**
+	 * Creates an adapter reading from a memory-mapped view of the given local
+	 * file, which must be the file the handle points to. The handle is still
+	 * used for string searches and owned by this adapter.
+	 */
+	public DataHandleAdapter(final DataHandle<Location> handle, final File file)
+		throws IOException
 	{
 		super(new byte[1]);
 		this.handle = handle;
+		try (final FileChannel channel = FileChannel.open(file.toPath(),
+			StandardOpenOption.READ))
+		{
+			final long length = channel.size();
+			final int count = (int) Math.max(1, (length + SEGMENT_SIZE - 1) /
+				SEGMENT_SIZE);
+			segments = new ByteBuffer[count];
+			for (int i = 0; i < count; i++) {
+				final long start = (long) i * SEGMENT_SIZE;
+				final long size = Math.min(SEGMENT_SIZE + SEGMENT_OVERLAP, length -
+					start);
+				segments[i] = channel.map(MapMode.READ_ONLY, start, size);
+				segments[i].order(getOrder());
+			}
+		}
+		buffer = segments[0];
+		pos = handle.offset();
 	}
 
 	// -- RandomAccessInputStreamWrapper API Methods --
@@ -76,9 +171,8 @@ public class DataHandleAdapter extends RandomAccessInputStream implements
 
 	@Override
 	public void seek(final long pos) throws IOException {
-		if (handle != null) {
-			handle.seek(pos);
-		}
+		// NB: called by the super constructor, before the fields are set.
+		this.pos = pos;
 	}
 
 	@Override
@@ -89,11 +183,12 @@ public class DataHandleAdapter extends RandomAccessInputStream implements
 	@Override
 	public void setLength(final long newLength) throws IOException {
 		handle.setLength(newLength);
+		invalidate();
 	}
 
 	@Override
 	public long getFilePointer() throws IOException {
-		return handle.offset();
+		return pos;
 	}
 
 	@Override
@@ -103,7 +198,7 @@ public class DataHandleAdapter extends RandomAccessInputStream implements
 
 	@Override
 	public void order(final boolean little) {
-		handle.setLittleEndian(little);
+		setOrder(little ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
 	}
 
 	@Override
@@ -113,161 +208,267 @@ public class DataHandleAdapter extends RandomAccessInputStream implements
 
 	@Override
 	public String readString(final String lastChars) throws IOException {
-		return handle.readString(lastChars);
+		sync();
+		try {
+			return handle.readString(lastChars);
+		}
+		finally {
+			pos = handle.offset();
+		}
 	}
 
 	@Override
 	public String findString(final String... terminators) throws IOException {
-		return handle.findString(terminators);
+		sync();
+		try {
+			return handle.findString(terminators);
+		}
+		finally {
+			pos = handle.offset();
+		}
 	}
 
 	@Override
 	public String findString(final boolean saveString,
 		final String... terminators) throws IOException
 	{
-		return handle.findString(saveString, terminators);
+		sync();
+		try {
+			return handle.findString(saveString, terminators);
+		}
+		finally {
+			pos = handle.offset();
+		}
 	}
 
 	@Override
 	public String findString(final int blockSize, final String... terminators)
 		throws IOException
 	{
-		return handle.findString(blockSize, terminators);
+		sync();
+		try {
+			return handle.findString(blockSize, terminators);
+		}
+		finally {
+			pos = handle.offset();
+		}
 	}
 
 	@Override
 	public String findString(final boolean saveString, final int blockSize,
 		final String... terminators) throws IOException
 	{
-		return handle.findString(saveString, blockSize, terminators);
+		sync();
+		try {
+			return handle.findString(saveString, blockSize, terminators);
+		}
+		finally {
+			pos = handle.offset();
+		}
 	}
 
 	// -- DataInput API methods --
 
 	@Override
 	public boolean readBoolean() throws IOException {
-		return handle.readBoolean();
+		return readByte() != 0;
 	}
 
 	@Override
 	public byte readByte() throws IOException {
-		return handle.readByte();
+		require(1);
+		return buffer.get(index(1));
 	}
 
 	@Override
 	public char readChar() throws IOException {
-		return handle.readChar();
+		require(2);
+		return buffer.getChar(index(2));
 	}
 
 	@Override
 	public double readDouble() throws IOException {
-		return handle.readDouble();
+		require(8);
+		return buffer.getDouble(index(8));
 	}
 
 	@Override
 	public float readFloat() throws IOException {
-		return handle.readFloat();
+		require(4);
+		return buffer.getFloat(index(4));
 	}
 
 	@Override
 	public int readInt() throws IOException {
-		return handle.readInt();
+		require(4);
+		return buffer.getInt(index(4));
 	}
 
 	@Override
 	public String readLine() throws IOException {
-		return handle.readLine();
+		sync();
+		try {
+			return handle.readLine();
+		}
+		finally {
+			pos = handle.offset();
+		}
 	}
 
 	@Override
 	public String readCString() throws IOException {
-		return handle.readCString();
+		sync();
+		try {
+			return handle.readCString();
+		}
+		finally {
+			pos = handle.offset();
+		}
 	}
 
 	@Override
 	public String readString(final int n) throws IOException {
-		return handle.readString(n);
+		final int r = (int) Math.max(0, Math.min(n, length() - pos));
+		final byte[] b = new byte[r];
+		readFully(b);
+		return new String(b, handle.getEncoding());
 	}
 
 	@Override
 	public long readLong() throws IOException {
-		return handle.readLong();
+		require(8);
+		return buffer.getLong(index(8));
 	}
 
 	@Override
 	public short readShort() throws IOException {
-		return handle.readShort();
+		require(2);
+		return buffer.getShort(index(2));
 	}
 
 	@Override
 	public int readUnsignedByte() throws IOException {
-		return handle.readUnsignedByte();
+		return readByte() & 0xff;
 	}
 
 	@Override
 	public int readUnsignedShort() throws IOException {
-		return handle.readUnsignedShort();
+		return readShort() & 0xffff;
 	}
 
 	@Override
 	public String readUTF() throws IOException {
-		return handle.readUTF();
+		return DataInputStream.readUTF(this);
 	}
 
 	@Override
 	public int skipBytes(final int n) throws IOException {
-		return handle.skipBytes(n);
+		final int skipped = (int) Math.max(0, Math.min(n, length() - pos));
+		pos += skipped;
+		return skipped;
 	}
 
 	@Override
 	public int read(final byte[] array) throws IOException {
-		return handle.read(array);
+		return read(array, 0, array.length);
 	}
 
 	@Override
 	public int read(final byte[] array, final int offset, final int n)
 		throws IOException
 	{
-		return handle.read(array, offset, n);
+		if (n == 0) return 0;
+		int total = 0;
+		while (total < n) {
+			int r = copyBuffered(array, offset + total, n - total);
+			if (r == 0) {
+				if (segments == null && n - total >= buffer.capacity()) {
+					// large read: bypass the buffer
+					sync();
+					r = handle.read(array, offset + total, n - total);
+					if (r > 0) pos += r;
+				}
+				else if (fill(1)) {
+					r = copyBuffered(array, offset + total, n - total);
+				}
+			}
+			if (r <= 0) break;
+			total += r;
+		}
+		return total == 0 ? -1 : total;
 	}
 
+	/**
+	 * Reads into the given buffer from its position up to its limit, advancing
+	 * the position by the number of bytes read.
+	 */
 	@Override
 	public int read(final ByteBuffer buf) throws IOException {
-		return handle.read(buf.array());
+		return read(buf, buf.position(), buf.remaining());
 	}
 
+	/**
+	 * Reads up to {@code n} bytes into the given buffer, starting at index
+	 * {@code offset}, and leaves the buffer's position after the last byte read.
+	 * Heap buffers are filled in place; direct buffers are filled straight from
+	 * the block buffer or mapped segment, as {@link DataHandle} only reads into
+	 * byte arrays.
+	 */
 	@Override
 	public int read(final ByteBuffer buf, final int offset, final int n)
 		throws IOException
 	{
-		return handle.read(buf.array(), offset, n);
+		if (buf.hasArray()) {
+			final int r = read(buf.array(), buf.arrayOffset() + offset, n);
+			if (r > 0) buf.position(offset + r);
+			return r;
+		}
+		buf.position(offset);
+		if (n == 0) return 0;
+		int total = 0;
+		while (total < n) {
+			if (!buffered(1) && !fill(1)) break;
+			final int r = (int) Math.min(n - total, bufferStart + buffer.limit() -
+				pos);
+			// NB: a duplicate leaves the position and limit of the buffer alone.
+			final ByteBuffer src = buffer.duplicate();
+			src.position((int) (pos - bufferStart));
+			src.limit(src.position() + r);
+			buf.put(src);
+			pos += r;
+			total += r;
+		}
+		return total == 0 ? -1 : total;
 	}
 
 	@Override
 	public void readFully(final byte[] array) throws IOException {
-		handle.readFully(array);
+		readFully(array, 0, array.length);
 	}
 
 	@Override
 	public void readFully(final byte[] array, final int offset, final int n)
 		throws IOException
 	{
-		handle.readFully(array, offset, n);
+		int total = 0;
+		while (total < n) {
+			final int r = read(array, offset + total, n - total);
+			if (r <= 0) throw new EOFException();
+			total += r;
+		}
 	}
 
 	// -- InputStream API methods --
 
 	@Override
 	public int read() throws IOException {
-		return handle.read();
+		if (!buffered(1) && !fill(1)) return -1;
+		return buffer.get(index(1)) & 0xff;
 	}
 
 	@Override
 	public int available() throws IOException {
-		if (handle.offset() < handle.length()) {
-			return (int) (handle.offset() - handle.length());
-		}
-		return 0;
+		return (int) Math.max(0, Math.min(Integer.MAX_VALUE, length() - pos));
 	}
 
 	@Override
@@ -282,7 +483,7 @@ public class DataHandleAdapter extends RandomAccessInputStream implements
 
 	@Override
 	public void reset() throws IOException {
-		handle.seek(0);
+		seek(0);
 	}
 
 	@Override
@@ -370,6 +571,13 @@ public class DataHandleAdapter extends RandomAccessInputStream implements
 	@Override
 	public void setOrder(final ByteOrder order) {
 		handle.setLittleEndian(order == ByteOrder.LITTLE_ENDIAN);
+		// NB: called by the super constructor, before the buffer exists.
+		if (segments != null) {
+			for (final ByteBuffer segment : segments) {
+				segment.order(order);
+			}
+		}
+		else if (buffer != null) buffer.order(order);
 	}
 
 	@Override
@@ -383,4 +591,83 @@ public class DataHandleAdapter extends RandomAccessInputStream implements
 	{
 		throw readOnly();
 	}
+
+	// -- Helper methods --
+
+	/** @return true iff the {@code n} bytes at the file pointer are buffered. */
+	private boolean buffered(final int n) {
+		return pos >= bufferStart && pos + n <= bufferStart + buffer.limit();
+	}
+
+	/** Ensures the {@code n} bytes at the file pointer are buffered. */
+	private void require(final int n) throws IOException {
+		if (!buffered(n) && !fill(n)) throw new EOFException();
+	}
+
+	/**
+	 * Gets the buffer index of the file pointer and advances the file pointer
+	 * by {@code n} bytes.
+	 */
+	private int index(final int n) {
+		final int index = (int) (pos - bufferStart);
+		pos += n;
+		return index;
+	}
+
+	/**
+	 * Refills the buffer with the block containing the file pointer.
+	 *
+	 * @return true iff at least {@code n} bytes are now buffered at the file
+	 *         pointer.
+	 */
+	private boolean fill(final int n) throws IOException {
+		if (segments != null) {
+			// select the mapped segment containing the file pointer
+			final int segment = (int) (pos / SEGMENT_SIZE);
+			if (pos < 0 || segment >= segments.length) return false;
+			buffer = segments[segment];
+			bufferStart = (long) segment * SEGMENT_SIZE;
+			return buffered(n);
+		}
+		final int blockSize = buffer.capacity();
+		long start = pos - pos % blockSize;
+		if (pos + n > start + blockSize) start = pos;
+		handle.seek(start);
+		final byte[] block = buffer.array();
+		int total = 0;
+		while (total < blockSize) {
+			final int r = handle.read(block, total, blockSize - total);
+			if (r <= 0) break;
+			total += r;
+		}
+		bufferStart = start;
+		buffer.limit(total);
+		return buffered(n);
+	}
+
+	/** Discards the buffered bytes. */
+	private void invalidate() {
+		// NB: a mapped file can not change length through this read-only adapter
+		if (segments == null) buffer.limit(0);
+	}
+
+	/**
+	 * Copies as many bytes as are buffered at the file pointer (up to
+	 * {@code n}) into the given array.
+	 */
+	private int copyBuffered(final byte[] array, final int offset,
+		final int n)
+	{
+		if (!buffered(1)) return 0;
+		final int r = (int) Math.min(n, bufferStart + buffer.limit() - pos);
+		buffer.position((int) (pos - bufferStart));
+		buffer.get(array, offset, r);
+		pos += r;
+		return r;
+	}
+
+	/** Moves the handle to the file pointer, for reads bypassing the buffer. */
+	private void sync() throws IOException {
+		handle.seek(pos);
+	}
 }
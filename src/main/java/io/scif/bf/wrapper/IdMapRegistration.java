@@ -0,0 +1,100 @@
+/*
+ * #%L
+ * SCIFIO Bio-Formats compatibility format.
+ * %%
+ * Copyright (C) 2013 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package io.scif.bf.wrapper;
+
+import java.io.Closeable;
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import loci.common.IRandomAccess;
+import loci.common.Location;
+
+/**
+ * A scoped entry in Bio-Formats' id map ({@link Location#getIdMap()}), which
+ * lets Bio-Formats readers open a source that is not a local file.
+ * <p>
+ * Each registration maps the source under a unique id, so sources with the
+ * same name can not overwrite each other, and removes its entry again when
+ * closed, so the map does not grow with every source ever opened. The id
+ * keeps the source's name as its last path component, since Bio-Formats
+ * readers rely on the name (e.g. its suffix).
+ * </p>
+ * <p>
+ * The id map is thread-local: the entry is only visible on the thread which
+ * created the registration. Closing removes it from that thread's map, even
+ * when called on another thread.
+ * </p>
+ * <p>
+ * Closing a registration does not close the mapped handle.
+ * </p>
+ */
+public class IdMapRegistration implements Closeable {
+
+	// -- Constants --
+
+	private static final String PREFIX = "scifio-bf-";
+
+	// -- Static fields --
+
+	private static final AtomicLong COUNTER = new AtomicLong();
+
+	// -- Fields --
+
+	private final String id;
+
+	/** The id map of the registering thread. */
+	private final Map<String, Object> idMap;
+
+	// -- Constructors --
+
+	/** Maps the given handle under a new unique id ending in the given name. */
+	public IdMapRegistration(final String name, final IRandomAccess handle) {
+		id = PREFIX + COUNTER.incrementAndGet() + File.separator + name;
+		idMap = Location.getIdMap();
+		idMap.put(id, handle);
+	}
+
+	// -- IdMapRegistration API methods --
+
+	/** @return the id under which the handle is mapped. */
+	public String getId() {
+		return id;
+	}
+
+	// -- Closeable API methods --
+
+	@Override
+	public void close() {
+		idMap.remove(id);
+	}
+
+}
@@ -0,0 +1,210 @@
+/*
+ * #%L
+ * SCIFIO Bio-Formats compatibility format.
+ * %%
+ * Copyright (C) 2013 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package io.scif.bf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.scif.SCIFIO;
+import io.scif.config.SCIFIOConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.io.location.FileLocation;
+import org.scijava.io.location.Location;
+
+/**
+ * Tests the scheduling of {@link BatchOpener}. The locations do not exist, so
+ * each is reported as unsupported without involving any Bio-Formats reader.
+ */
+public class BatchOpenerTest {
+
+	private static final int COUNT = 20;
+
+	private SCIFIO scifio;
+
+	private BatchOpener opener;
+
+	private File dir;
+
+	@Before
+	public void setUp() throws IOException {
+		scifio = new SCIFIO();
+		opener = new BatchOpener(scifio.format().getFormatFromClass(
+			BioFormatsFormat.class), 3);
+		dir = Files.createTempDirectory("BatchOpenerTest").toFile();
+	}
+
+	@After
+	public void tearDown() {
+		scifio.getContext().dispose();
+		dir.delete();
+	}
+
+	@Test
+	public void testConcurrencyLimit() throws InterruptedException {
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+		final List<BatchOpener.Result<Object>> results =
+			new CopyOnWriteArrayList<>();
+		opener.open(new Locations(COUNT), new SCIFIOConfig(), (loc,
+			reader) -> null, result -> {
+				final int n = running.incrementAndGet();
+				maxRunning.accumulateAndGet(n, Math::max);
+				sleep(10);
+				running.decrementAndGet();
+				results.add(result);
+			});
+		assertEquals(COUNT, results.size());
+		assertTrue(maxRunning.get() <= 3);
+		for (final BatchOpener.Result<Object> result : results) {
+			assertFalse(result.isSupported());
+		}
+	}
+
+	@Test
+	public void testBackpressure() throws InterruptedException {
+		final Locations locations = new Locations(COUNT);
+		final CountDownLatch started = new CountDownLatch(3);
+		final CountDownLatch proceed = new CountDownLatch(1);
+		final AtomicInteger done = new AtomicInteger();
+		final Thread batch = new Thread(() -> {
+			try {
+				opener.open(locations, new SCIFIOConfig(), (loc, reader) -> null,
+					result -> {
+						started.countDown();
+						await(proceed);
+						done.incrementAndGet();
+					});
+			}
+			catch (final InterruptedException e) {
+				// test failed
+			}
+		});
+		batch.start();
+		try {
+			assertTrue(started.await(10, TimeUnit.SECONDS));
+			// all slots are busy, so no further locations are taken
+			sleep(50);
+			assertEquals(3, locations.taken.get());
+		}
+		finally {
+			proceed.countDown();
+			batch.join(10000);
+		}
+		assertEquals(COUNT, locations.taken.get());
+		assertEquals(COUNT, done.get());
+	}
+
+	@Test
+	public void testCallbackFailureReported() throws InterruptedException {
+		final Locations locations = new Locations(COUNT);
+		final IllegalStateException failure = new IllegalStateException();
+		try {
+			opener.open(locations, new SCIFIOConfig(), (loc, reader) -> null,
+				result -> {
+					throw failure;
+				});
+			fail("Expected IllegalStateException");
+		}
+		catch (final IllegalStateException e) {
+			assertSame(failure, e);
+		}
+		// no further locations are started once the callback fails
+		assertTrue(locations.taken.get() < COUNT);
+	}
+
+	// -- Helper methods --
+
+	private static void sleep(final long millis) {
+		try {
+			Thread.sleep(millis);
+		}
+		catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void await(final CountDownLatch latch) {
+		try {
+			latch.await();
+		}
+		catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	// -- Helper classes --
+
+	/** Lazily produced locations, counting how many were taken. */
+	private class Locations implements Iterable<Location> {
+
+		private final int count;
+
+		private final AtomicInteger taken = new AtomicInteger();
+
+		private Locations(final int count) {
+			this.count = count;
+		}
+
+		@Override
+		public Iterator<Location> iterator() {
+			return new Iterator<Location>() {
+
+				@Override
+				public boolean hasNext() {
+					return taken.get() < count;
+				}
+
+				@Override
+				public Location next() {
+					return new FileLocation(new File(dir, "missing-" + taken
+						.getAndIncrement() + ".tif"));
+				}
+			};
+		}
+	}
+
+}
@@ -0,0 +1,169 @@
+/*
+ * #%L
+ * SCIFIO Bio-Formats compatibility format.
+ * %%
+ * Copyright (C) 2013 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package io.scif.bf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link LazyMetaTable}.
+ */
+public class LazyMetaTableTest {
+
+	private Map<String, Object> source;
+
+	private LazyMetaTable table;
+
+	@Before
+	public void setUp() {
+		source = new HashMap<>();
+		source.put("a", 1);
+		source.put("b", "two");
+		table = new LazyMetaTable(source);
+	}
+
+	@Test
+	public void testReadsThrough() {
+		assertFalse(table.isMaterialized());
+		assertEquals(2, table.size());
+		assertEquals(1, table.get("a"));
+		assertTrue(table.containsKey("b"));
+		assertTrue(table.containsValue("two"));
+		assertEquals("x", table.getOrDefault("c", "x"));
+		assertEquals(source.keySet(), table.keySet());
+		assertEquals(source.entrySet(), table.entrySet());
+		final Map<String, Object> seen = new HashMap<>();
+		table.forEach(seen::put);
+		assertEquals(source, seen);
+		assertFalse(table.isMaterialized());
+	}
+
+	@Test
+	public void testSuppliedOnFirstAccess() {
+		final AtomicInteger calls = new AtomicInteger();
+		final LazyMetaTable supplied = new LazyMetaTable(() -> {
+			calls.incrementAndGet();
+			return source;
+		});
+		assertFalse(supplied.isLoaded());
+		assertEquals(0, calls.get());
+		assertEquals("two", supplied.get("b"));
+		assertTrue(supplied.isLoaded());
+		assertFalse(supplied.isMaterialized());
+		assertEquals(2, supplied.size());
+		supplied.put("c", 3);
+		assertEquals(3, supplied.size());
+		assertEquals(1, calls.get());
+	}
+
+	@Test
+	public void testClearBeforeLoading() {
+		final AtomicInteger calls = new AtomicInteger();
+		final LazyMetaTable supplied = new LazyMetaTable(() -> {
+			calls.incrementAndGet();
+			return source;
+		});
+		supplied.clear();
+		assertTrue(supplied.isEmpty());
+		supplied.put("c", 3);
+		assertEquals(1, supplied.size());
+		assertEquals(0, calls.get());
+	}
+
+	@Test
+	public void testViewsReadOnlyUntilModified() {
+		try {
+			table.keySet().remove("a");
+			fail("Expected UnsupportedOperationException");
+		}
+		catch (final UnsupportedOperationException e) {
+			// expected
+		}
+		try {
+			table.entrySet().iterator().next().setValue(3);
+			fail("Expected UnsupportedOperationException");
+		}
+		catch (final UnsupportedOperationException e) {
+			// expected
+		}
+		assertEquals(2, source.size());
+		assertEquals(1, source.get("a"));
+	}
+
+	@Test
+	public void testCopyOnWrite() {
+		table.put("c", 3.0);
+		assertTrue(table.isMaterialized());
+		assertEquals(3, table.size());
+		assertEquals(1, table.get("a"));
+		assertEquals(3.0, table.get("c"));
+		// the source is left alone
+		assertEquals(2, source.size());
+		assertFalse(source.containsKey("c"));
+
+		table.remove("a");
+		assertNull(table.get("a"));
+		assertEquals(1, source.get("a"));
+
+		// views are now those of the table itself
+		table.keySet().remove("b");
+		assertFalse(table.containsKey("b"));
+		assertTrue(source.containsKey("b"));
+	}
+
+	@Test
+	public void testComputeMaterializes() {
+		table.compute("a", (k, v) -> (Integer) v + 1);
+		assertTrue(table.isMaterialized());
+		assertEquals(2, table.get("a"));
+		assertEquals("two", table.get("b"));
+		assertEquals(1, source.get("a"));
+	}
+
+	@Test
+	public void testClear() {
+		table.clear();
+		assertTrue(table.isMaterialized());
+		assertTrue(table.isEmpty());
+		assertEquals(2, source.size());
+	}
+
+}
@@ -0,0 +1,128 @@
+/*
+ * #%L
+ * SCIFIO Bio-Formats compatibility format.
+ * %%
+ * Copyright (C) 2013 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package io.scif.bf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import io.scif.ByteArrayPlane;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.Context;
+
+/**
+ * Tests {@link PlaneBufferPool}.
+ */
+public class PlaneBufferPoolTest {
+
+	private Context context;
+
+	@Before
+	public void setUp() {
+		context = new Context(true);
+	}
+
+	@After
+	public void tearDown() {
+		context.dispose();
+	}
+
+	@Test
+	public void testReuseBySize() {
+		final PlaneBufferPool pool = new PlaneBufferPool(1024);
+		final ByteArrayPlane small = plane(16);
+		final ByteArrayPlane large = plane(64);
+		assertNull(pool.lease(16));
+		assertTrue(pool.release(small));
+		assertTrue(pool.release(large));
+		assertEquals(80, pool.getRetainedBytes());
+
+		assertNull(pool.lease(32));
+		assertSame(large, pool.lease(64));
+		assertSame(small, pool.lease(16));
+		assertNull(pool.lease(16));
+		assertEquals(0, pool.getRetainedBytes());
+		assertEquals(5, pool.getLeaseCount());
+		assertEquals(2, pool.getReuseCount());
+		assertEquals(0.4, pool.getReuseRate(), 0);
+	}
+
+	@Test
+	public void testBudget() {
+		final PlaneBufferPool pool = new PlaneBufferPool(40);
+		assertTrue(pool.release(plane(16)));
+		assertTrue(pool.release(plane(16)));
+		assertFalse(pool.release(plane(16)));
+		assertEquals(32, pool.getRetainedBytes());
+	}
+
+	@Test
+	public void testDoubleRelease() {
+		final PlaneBufferPool pool = new PlaneBufferPool(1024);
+		final ByteArrayPlane plane = plane(16);
+		assertTrue(pool.release(plane));
+		assertFalse(pool.release(plane));
+		assertEquals(16, pool.getRetainedBytes());
+
+		// the plane is handed to one lease only
+		assertSame(plane, pool.lease(16));
+		assertNull(pool.lease(16));
+
+		// once leased again, it may be released again
+		assertTrue(pool.release(plane));
+	}
+
+	@Test
+	public void testClear() {
+		final PlaneBufferPool pool = new PlaneBufferPool(1024);
+		final ByteArrayPlane plane = plane(16);
+		pool.release(plane);
+		pool.clear();
+		assertEquals(0, pool.getRetainedBytes());
+		assertNull(pool.lease(16));
+		assertTrue(pool.release(plane));
+		assertSame(plane, pool.lease(16));
+	}
+
+	// -- Helper methods --
+
+	private ByteArrayPlane plane(final int length) {
+		final ByteArrayPlane plane = new ByteArrayPlane(context);
+		plane.setData(new byte[length]);
+		return plane;
+	}
+
+}
@@ -0,0 +1,177 @@
+/*
+ * #%L
+ * SCIFIO Bio-Formats compatibility format.
+ * %%
+ * Copyright (C) 2013 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package io.scif.bf;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link PlaneCache}.
+ */
+public class PlaneCacheTest {
+
+	@Test
+	public void testExactHit() {
+		final PlaneCache cache = new PlaneCache(1024);
+		final byte[] data = ramp(16);
+		cache.put(0, 0, 3, 0, 0, 4, 4, data, data.length);
+
+		final byte[] dest = new byte[16];
+		assertTrue(cache.get(0, 0, 3, 0, 0, 4, 4, 1, 1, dest));
+		assertArrayEquals(data, dest);
+		assertEquals(1, cache.getHits());
+		assertEquals(16, cache.getUsedBytes());
+	}
+
+	@Test
+	public void testMissOnOtherPlane() {
+		final PlaneCache cache = new PlaneCache(1024);
+		final byte[] data = ramp(16);
+		cache.put(0, 0, 3, 0, 0, 4, 4, data, data.length);
+
+		final byte[] dest = new byte[16];
+		assertFalse(cache.get(0, 0, 4, 0, 0, 4, 4, 1, 1, dest));
+		assertFalse(cache.get(1, 0, 3, 0, 0, 4, 4, 1, 1, dest));
+		assertFalse(cache.get(0, 1, 3, 0, 0, 4, 4, 1, 1, dest));
+		assertEquals(3, cache.getMisses());
+		assertEquals(0, cache.getHits());
+	}
+
+	@Test
+	public void testSubRegionInterleaved() {
+		// 4x3 plane, 2 bytes per pixel
+		final PlaneCache cache = new PlaneCache(1024);
+		final byte[] data = ramp(4 * 3 * 2);
+		cache.put(0, 0, 0, 0, 0, 4, 3, data, data.length);
+
+		// 2x2 region at (1, 1)
+		final byte[] dest = new byte[2 * 2 * 2];
+		assertTrue(cache.get(0, 0, 0, 1, 1, 2, 2, 2, 1, dest));
+		assertArrayEquals(new byte[] { 10, 11, 12, 13, 18, 19, 20, 21 }, dest);
+	}
+
+	@Test
+	public void testSubRegionPerChannelBlocks() {
+		// 3x2 plane at (10, 20), 3 non-interleaved channels of 1 byte per pixel
+		final PlaneCache cache = new PlaneCache(1024);
+		final byte[] data = ramp(3 * 2 * 3);
+		cache.put(0, 0, 0, 10, 20, 3, 2, data, data.length);
+
+		// 2x1 region at (11, 21)
+		final byte[] dest = new byte[2 * 1 * 3];
+		assertTrue(cache.get(0, 0, 0, 11, 21, 2, 1, 1, 3, dest));
+		assertArrayEquals(new byte[] { 4, 5, 10, 11, 16, 17 }, dest);
+	}
+
+	@Test
+	public void testRegionNotContained() {
+		final PlaneCache cache = new PlaneCache(1024);
+		final byte[] data = ramp(16);
+		cache.put(0, 0, 0, 0, 0, 4, 4, data, data.length);
+
+		final byte[] dest = new byte[16];
+		assertFalse(cache.get(0, 0, 0, 1, 1, 4, 4, 1, 1, dest));
+	}
+
+	@Test
+	public void testLeastRecentlyUsedEviction() {
+		final PlaneCache cache = new PlaneCache(32);
+		final byte[] data = ramp(16);
+		final byte[] dest = new byte[16];
+		cache.put(0, 0, 0, 0, 0, 4, 4, data, data.length);
+		cache.put(0, 0, 1, 0, 0, 4, 4, data, data.length);
+		// touch plane 0, so plane 1 is the eldest
+		assertTrue(cache.get(0, 0, 0, 0, 0, 4, 4, 1, 1, dest));
+		cache.put(0, 0, 2, 0, 0, 4, 4, data, data.length);
+
+		assertEquals(32, cache.getUsedBytes());
+		assertTrue(cache.get(0, 0, 0, 0, 0, 4, 4, 1, 1, dest));
+		assertFalse(cache.get(0, 0, 1, 0, 0, 4, 4, 1, 1, dest));
+		assertFalse(cache.get(0, 0, 1, 1, 1, 2, 2, 1, 1, dest));
+		assertTrue(cache.get(0, 0, 2, 0, 0, 4, 4, 1, 1, dest));
+	}
+
+	@Test
+	public void testReplaceKeepsAccounting() {
+		final PlaneCache cache = new PlaneCache(1024);
+		final byte[] data = ramp(16);
+		cache.put(0, 0, 0, 0, 0, 4, 4, data, data.length);
+		cache.put(0, 0, 0, 0, 0, 4, 4, data, data.length);
+		assertEquals(16, cache.getUsedBytes());
+	}
+
+	@Test
+	public void testOversizedNotCached() {
+		final PlaneCache cache = new PlaneCache(8);
+		final byte[] data = ramp(16);
+		cache.put(0, 0, 0, 0, 0, 4, 4, data, data.length);
+		assertEquals(0, cache.getUsedBytes());
+		assertFalse(cache.get(0, 0, 0, 0, 0, 4, 4, 1, 1, new byte[16]));
+	}
+
+	@Test
+	public void testCopiesOnPut() {
+		final PlaneCache cache = new PlaneCache(1024);
+		final byte[] data = ramp(16);
+		cache.put(0, 0, 0, 0, 0, 4, 4, data, 8);
+		data[0] = 99;
+
+		final byte[] dest = new byte[8];
+		assertTrue(cache.get(0, 0, 0, 0, 0, 4, 4, 1, 1, dest));
+		assertArrayEquals(new byte[] { 0, 1, 2, 3, 4, 5, 6, 7 }, dest);
+		assertEquals(8, cache.getUsedBytes());
+	}
+
+	@Test
+	public void testClear() {
+		final PlaneCache cache = new PlaneCache(1024);
+		final byte[] data = ramp(16);
+		cache.put(0, 0, 0, 0, 0, 4, 4, data, data.length);
+		cache.clear();
+		assertEquals(0, cache.getUsedBytes());
+		assertFalse(cache.get(0, 0, 0, 0, 0, 2, 2, 1, 1, new byte[4]));
+	}
+
+	// -- Helper methods --
+
+	private static byte[] ramp(final int length) {
+		final byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++) {
+			bytes[i] = (byte) i;
+		}
+		return bytes;
+	}
+
+}
@@ -0,0 +1,173 @@
+/*
+ * #%L
+ * SCIFIO Bio-Formats compatibility format.
+ * %%
+ * Copyright (C) 2013 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package io.scif.bf;
+
+import static org.junit.Assert.assertEquals;
+
+import io.scif.ByteArrayPlane;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link PlanePrefetcher}.
+ */
+public class PlanePrefetcherTest {
+
+	private static final Interval BOUNDS = new FinalInterval(4, 4);
+
+	/** Plane indices read by the source, in any order. */
+	private List<Long> reads;
+
+	private PlanePrefetcher.PlaneSource source;
+
+	@Before
+	public void setUp() {
+		reads = Collections.synchronizedList(new ArrayList<>());
+		source = (imageIndex, planeIndex, bounds) -> {
+			reads.add(planeIndex);
+			return null;
+		};
+	}
+
+	@Test
+	public void testNoPrefetchWithoutStride() throws InterruptedException {
+		final PlanePrefetcher prefetcher = new PlanePrefetcher(2);
+		open(prefetcher, 0, 20);
+		open(prefetcher, 5, 20);
+		open(prefetcher, 7, 20);
+		assertReads(0L, 5L, 7L);
+	}
+
+	@Test
+	public void testPrefetchAlongStride() throws InterruptedException {
+		final PlanePrefetcher prefetcher = new PlanePrefetcher(2);
+		open(prefetcher, 0, 20);
+		open(prefetcher, 3, 20);
+		// the stride repeats: the next two planes along it are read ahead
+		open(prefetcher, 6, 20);
+		assertReads(0L, 3L, 6L, 9L, 12L);
+		// prefetched planes are not read again
+		open(prefetcher, 9, 20);
+		assertReads(0L, 3L, 6L, 9L, 12L, 15L);
+	}
+
+	@Test
+	public void testPrefetchBoundedByPlaneCount() throws InterruptedException {
+		final PlanePrefetcher prefetcher = new PlanePrefetcher(5);
+		open(prefetcher, 2, 5);
+		open(prefetcher, 1, 5);
+		open(prefetcher, 0, 5);
+		assertReads(0L, 1L, 2L);
+		open(prefetcher, 0, 5);
+		open(prefetcher, 1, 5);
+		open(prefetcher, 2, 5);
+		// only the planes up to the last are read ahead
+		assertReads(0L, 0L, 1L, 1L, 2L, 2L, 3L, 4L);
+	}
+
+	@Test
+	public void testDepthEvictsOldestPrefetches() throws InterruptedException {
+		final PlanePrefetcher prefetcher = new PlanePrefetcher(2);
+		open(prefetcher, 0, 100);
+		open(prefetcher, 1, 100);
+		open(prefetcher, 2, 100);
+		assertReads(0L, 1L, 2L, 3L, 4L);
+		open(prefetcher, 10, 100);
+		open(prefetcher, 18, 100);
+		// planes 3 and 4 made way for 26 and 34
+		assertReads(0L, 1L, 2L, 3L, 4L, 10L, 18L, 26L, 34L);
+		open(prefetcher, 3, 100);
+		assertReads(0L, 1L, 2L, 3L, 3L, 4L, 10L, 18L, 26L, 34L);
+	}
+
+	@Test
+	public void testRegionChangeDiscardsPrefetches()
+		throws InterruptedException
+	{
+		final PlanePrefetcher prefetcher = new PlanePrefetcher(2);
+		open(prefetcher, 0, 20);
+		open(prefetcher, 1, 20);
+		open(prefetcher, 2, 20);
+		assertReads(0L, 1L, 2L, 3L, 4L);
+		prefetcher.open(0, 3, new FinalInterval(2, 2), 20, source).join();
+		assertReads(0L, 1L, 2L, 3L, 3L, 4L);
+	}
+
+	@Test
+	public void testDisabled() throws InterruptedException {
+		final PlanePrefetcher prefetcher = new PlanePrefetcher(0);
+		for (long p = 0; p < 4; p++) {
+			open(prefetcher, p, 20);
+		}
+		assertReads(0L, 1L, 2L, 3L);
+	}
+
+	// -- Helper methods --
+
+	private ByteArrayPlane open(final PlanePrefetcher prefetcher,
+		final long planeIndex, final long planeCount)
+	{
+		return prefetcher.open(0, planeIndex, BOUNDS, planeCount, source).join();
+	}
+
+	/**
+	 * Waits for the source to have read the given planes, and no more, in any
+	 * order.
+	 */
+	private void assertReads(final Long... expected)
+		throws InterruptedException
+	{
+		final long deadline = System.currentTimeMillis() + 10000;
+		while (reads.size() < expected.length && System
+			.currentTimeMillis() < deadline)
+		{
+			Thread.sleep(5);
+		}
+		// give unexpected reads the chance to show up
+		Thread.sleep(50);
+		final List<Long> actual;
+		synchronized (reads) {
+			actual = new ArrayList<>(reads);
+		}
+		Collections.sort(actual);
+		assertEquals(Arrays.asList(expected), actual);
+	}
+
+}
@@ -0,0 +1,102 @@
+/*
+ * #%L
+ * SCIFIO Bio-Formats compatibility format.
+ * %%
+ * Copyright (C) 2013 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package io.scif.bf;
+
+import static org.junit.Assert.assertEquals;
+
+import net.imglib2.display.ColorTable16;
+import net.imglib2.type.numeric.ARGBType;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link RampColorTable}.
+ */
+public class RampColorTableTest {
+
+	@Test
+	public void testMatchesStoredRamp() {
+		final int[] rgb = { 255, 128, 7 };
+		final RampColorTable ramp = new RampColorTable(rgb[0], rgb[1], rgb[2]);
+		final ColorTable16 stored = storedRamp(rgb);
+
+		assertEquals(stored.getLength(), ramp.getLength());
+		assertEquals(stored.getComponentCount(), ramp.getComponentCount());
+		for (int c = 0; c < rgb.length; c++) {
+			for (int bin = 0; bin < ramp.getLength(); bin += 251) {
+				assertEquals(stored.get(c, bin), ramp.get(c, bin));
+			}
+			assertEquals(stored.get(c, 65535), ramp.get(c, 65535));
+			assertEquals(stored.getResampled(c, 256, 100), ramp.getResampled(c,
+				256, 100));
+		}
+	}
+
+	@Test
+	public void testEnds() {
+		final RampColorTable ramp = new RampColorTable(255, 128, 7);
+		assertEquals(0, ramp.get(0, 0));
+		assertEquals(65535, ramp.get(0, 65535));
+		assertEquals(128 * 257, ramp.get(1, 65535));
+		assertEquals(7 * 257, ramp.get(2, 65535));
+	}
+
+	@Test
+	public void testLookupARGB() {
+		final RampColorTable ramp = new RampColorTable(255, 128, 7);
+		assertEquals(ARGBType.rgba(0, 0, 0, 255), ramp.lookupARGB(0, 100, 0));
+		assertEquals(ARGBType.rgba(255, 128, 7, 255), ramp.lookupARGB(0, 100,
+			100));
+		// values outside the range are clamped
+		assertEquals(ARGBType.rgba(255, 128, 7, 255), ramp.lookupARGB(0, 100,
+			1000));
+		// halfway along the ramp, give or take a bin
+		final int mid = ramp.lookupARGB(0, 100, 50);
+		assertEquals(127.5, ARGBType.red(mid), 1);
+		assertEquals(64, ARGBType.green(mid), 1);
+		assertEquals(3.5, ARGBType.blue(mid), 1);
+		assertEquals(255, ARGBType.alpha(mid));
+	}
+
+	// -- Helper methods --
+
+	/** Builds the ramp as an explicit 16-bit table. */
+	private static ColorTable16 storedRamp(final int[] rgb) {
+		final short[][] values = new short[rgb.length][65536];
+		for (int c = 0; c < rgb.length; c++) {
+			for (int i = 0; i < 65536; i++) {
+				values[c][i] = (short) (rgb[c] * i / 255);
+			}
+		}
+		return new ColorTable16(values);
+	}
+
+}
@@ -0,0 +1,337 @@
+/*
+ * #%L
+ * SCIFIO Bio-Formats compatibility format.
+ * %%
+ * Copyright (C) 2013 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package io.scif.bf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import loci.common.RandomAccessInputStream;
+import loci.formats.ClassList;
+import loci.formats.FormatReader;
+import loci.formats.IFormatReader;
+import loci.formats.ImageReader;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link ReaderIndex}.
+ */
+public class ReaderIndexTest {
+
+	private static final String MAGIC = "MAGI";
+
+	private ReaderIndex index;
+
+	private List<String> asked;
+
+	@Before
+	public void setUp() {
+		final ClassList<IFormatReader> classes = new ClassList<>(
+			IFormatReader.class);
+		classes.addClass(TiffReader.class);
+		classes.addClass(OMETiffReader.class);
+		classes.addClass(PNGReader.class);
+		classes.addClass(LastTiffReader.class);
+		index = new ReaderIndex(new ImageReader(classes));
+		asked = Collections.synchronizedList(new ArrayList<>());
+		for (final IFormatReader reader : index.getReaders()) {
+			((NamedReader) reader).asked = asked;
+		}
+	}
+
+	@Test
+	public void testCandidates() {
+		assertEquals(Arrays.asList("tiff", "ome-tiff", "last-tiff"), names(index
+			.getCandidates("/data/a.ome.tif")));
+		assertEquals(Arrays.asList("tiff", "last-tiff"), names(index
+			.getCandidates("/data/A.TIF")));
+		assertEquals(Arrays.asList("png"), names(index.getCandidates("a.png")));
+		assertEquals(Arrays.asList(), names(index.getCandidates("a.xyz")));
+		// only the last path component counts
+		assertEquals(Arrays.asList(), names(index.getCandidates(
+			"/data.tif/a")));
+	}
+
+	@Test
+	public void testCandidatesAskedFirst() {
+		assertFalse(index.isThisType("a.png", false));
+		assertEquals(Arrays.asList("png", "tiff", "ome-tiff", "last-tiff"),
+			asked);
+	}
+
+	@Test
+	public void testCandidatesInPriorityOrder() {
+		assertFalse(index.isThisType("a.ome.tif", false));
+		assertEquals(Arrays.asList("tiff", "ome-tiff", "last-tiff", "png"),
+			asked);
+	}
+
+	@Test
+	public void testAcceptingCandidateStopsDetection() {
+		reader("ome-tiff").setSuffixSufficient(true);
+		assertTrue(index.isThisType("a.ome.tif", false));
+		assertEquals(Arrays.asList("tiff", "ome-tiff"), asked);
+	}
+
+	@Test
+	public void testNoCandidates() {
+		assertFalse(index.isThisType("a.xyz", false));
+		assertEquals(Arrays.asList("tiff", "ome-tiff", "png", "last-tiff"),
+			asked);
+	}
+
+	@Test
+	public void testHangingCandidateDoesNotBlockDetection() throws IOException {
+		final long start = System.nanoTime();
+		assertTrue(index.isThisType("a.tif", reader -> {
+			if (reader.getFormat().equals("tiff")) return hang();
+			return reader.getFormat().equals("png");
+		}, 10000));
+		assertTrue(elapsedMillis(start) < 5000);
+	}
+
+	@Test
+	public void testParallelDetectionRejects() throws IOException {
+		assertFalse(index.isThisType("a.xyz", false, 10000));
+		assertEquals(4, asked.size());
+	}
+
+	@Test
+	public void testDetectionTimeout() throws IOException {
+		final long start = System.nanoTime();
+		try {
+			index.isThisType("a.tif", reader -> hang(), 100);
+			fail("Expected InterruptedIOException");
+		}
+		catch (final InterruptedIOException e) {
+			// the readers which did not answer are named
+			assertTrue(e.getMessage().contains("ome-tiff"));
+		}
+		assertTrue(elapsedMillis(start) < 5000);
+	}
+
+	@Test
+	public void testStreamProbeAppliesSuffixChecks() throws IOException {
+		final ReaderIndex sniffing = sniffingIndex();
+		final RandomAccessInputStream stream = stream(MAGIC);
+		// the generic reader accepts any name with the right header
+		assertTrue(sniffing.isThisType("a.png", stream));
+		assertEquals(Arrays.asList("generic"), asked);
+
+		// the specific reader requires its suffix; suffixes alone are not enough
+		asked.clear();
+		assertFalse(sniffing.isThisType("a.png", stream("NOPE")));
+		assertEquals(Arrays.asList("generic"), asked);
+		asked.clear();
+		assertTrue(sniffing.isThisType("a.tif", stream));
+		assertEquals(Arrays.asList("specific"), asked);
+	}
+
+	@Test
+	public void testStreamProbeAsksOverridingReadersByName()
+		throws IOException
+	{
+		// NamedReaders override isThisType(String, boolean)
+		assertFalse(index.isThisType("a.png", stream(MAGIC)));
+		assertEquals(Arrays.asList("png", "tiff", "ome-tiff", "last-tiff"),
+			asked);
+	}
+
+	// -- Helper methods --
+
+	private ReaderIndex sniffingIndex() {
+		final ClassList<IFormatReader> classes = new ClassList<>(
+			IFormatReader.class);
+		classes.addClass(SpecificReader.class);
+		classes.addClass(GenericReader.class);
+		final ReaderIndex sniffing = new ReaderIndex(new ImageReader(classes));
+		for (final IFormatReader reader : sniffing.getReaders()) {
+			((SniffingReader) reader).asked = asked;
+		}
+		return sniffing;
+	}
+
+	private static RandomAccessInputStream stream(final String header)
+		throws IOException
+	{
+		return new RandomAccessInputStream(header.getBytes(
+			StandardCharsets.US_ASCII));
+	}
+
+	/** Blocks until interrupted, as a reader stuck on a malformed file. */
+	private static boolean hang() {
+		try {
+			Thread.sleep(60000);
+		}
+		catch (final InterruptedException e) {
+			// cancelled
+		}
+		return false;
+	}
+
+	private static long elapsedMillis(final long start) {
+		return (System.nanoTime() - start) / 1000000;
+	}
+
+	private NamedReader reader(final String name) {
+		for (final IFormatReader reader : index.getReaders()) {
+			if (reader.getFormat().equals(name)) return (NamedReader) reader;
+		}
+		throw new IllegalArgumentException(name);
+	}
+
+	private static List<String> names(final List<IFormatReader> readers) {
+		final List<String> names = new ArrayList<>();
+		for (final IFormatReader reader : readers) {
+			names.add(reader.getFormat());
+		}
+		return names;
+	}
+
+	// -- Helper classes --
+
+	/**
+	 * A reader which records the readers asked about a name, and only accepts
+	 * names by their suffix if {@link #setSuffixSufficient enabled}.
+	 */
+	public static abstract class NamedReader extends FormatReader {
+
+		private List<String> asked;
+
+		public NamedReader(final String format, final String... suffixes) {
+			super(format, suffixes);
+			suffixSufficient = false;
+		}
+
+		public void setSuffixSufficient(final boolean sufficient) {
+			suffixSufficient = sufficient;
+		}
+
+		@Override
+		public boolean isThisType(final String name, final boolean open) {
+			asked.add(getFormat());
+			return super.isThisType(name, open);
+		}
+
+		@Override
+		public byte[] openBytes(final int no, final byte[] buf, final int x,
+			final int y, final int w, final int h)
+		{
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	/**
+	 * A reader relying on the standard name checks, which records the readers
+	 * asked about a stream and accepts streams starting with {@link #MAGIC}.
+	 */
+	public static abstract class SniffingReader extends FormatReader {
+
+		private List<String> asked;
+
+		public SniffingReader(final String format, final boolean necessary,
+			final String... suffixes)
+		{
+			super(format, suffixes);
+			suffixNecessary = necessary;
+			suffixSufficient = false;
+		}
+
+		@Override
+		public boolean isThisType(final RandomAccessInputStream stream)
+			throws IOException
+		{
+			asked.add(getFormat());
+			return MAGIC.equals(stream.readString(MAGIC.length()));
+		}
+
+		@Override
+		public byte[] openBytes(final int no, final byte[] buf, final int x,
+			final int y, final int w, final int h)
+		{
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	public static class SpecificReader extends SniffingReader {
+
+		public SpecificReader() {
+			super("specific", true, "tif");
+		}
+	}
+
+	public static class GenericReader extends SniffingReader {
+
+		public GenericReader() {
+			super("generic", false, "tif");
+		}
+	}
+
+	public static class TiffReader extends NamedReader {
+
+		public TiffReader() {
+			super("tiff", "tif", "tiff");
+		}
+	}
+
+	public static class OMETiffReader extends NamedReader {
+
+		public OMETiffReader() {
+			super("ome-tiff", "ome.tif", "ome.tiff");
+		}
+	}
+
+	public static class PNGReader extends NamedReader {
+
+		public PNGReader() {
+			super("png", "png");
+		}
+	}
+
+	public static class LastTiffReader extends NamedReader {
+
+		public LastTiffReader() {
+			super("last-tiff", "tif");
+		}
+	}
+
+}
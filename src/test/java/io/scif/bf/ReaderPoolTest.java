@@ -0,0 +1,280 @@
+/*
+ * #%L
+ * SCIFIO Bio-Formats compatibility format.
+ * %%
+ * Copyright (C) 2013 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package io.scif.bf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.scif.FormatException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import loci.formats.FormatReader;
+import loci.formats.IFormatReader;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link ReaderPool}.
+ */
+public class ReaderPoolTest {
+
+	private StubReader primary;
+
+	private AtomicInteger created;
+
+	private ExecutorService threads;
+
+	@Before
+	public void setUp() {
+		primary = new StubReader();
+		created = new AtomicInteger();
+		threads = Executors.newCachedThreadPool();
+	}
+
+	@After
+	public void tearDown() {
+		threads.shutdownNow();
+	}
+
+	@Test
+	public void testSingleReaderPool() throws Exception {
+		final ReaderPool pool = new ReaderPool(primary);
+		assertEquals(1, pool.getMaxSize());
+		assertSame(primary, pool.getPrimary());
+		assertSame(primary, pool.borrow());
+		pool.release(primary);
+		assertSame(primary, pool.borrow());
+		pool.release(primary);
+	}
+
+	@Test
+	public void testCreatesReadersUpToMaxSize() throws Exception {
+		final ReaderPool pool = pool(3);
+		// the idle primary reader is handed out first
+		assertSame(primary, pool.borrow());
+		final IFormatReader first = onOtherThread(pool::borrow);
+		final IFormatReader second = onOtherThread(pool::borrow);
+		assertNotSame(first, second);
+		assertEquals(2, created.get());
+
+		// released readers are reused rather than created anew
+		pool.release(first);
+		assertSame(first, onOtherThread(pool::borrow));
+		assertEquals(2, created.get());
+	}
+
+	@Test
+	public void testBorrowBlocksUntilRelease() throws Exception {
+		final ReaderPool pool = pool(2);
+		assertSame(primary, pool.borrow());
+		final IFormatReader other = onOtherThread(pool::borrow);
+
+		final Future<IFormatReader> waiting = threads.submit(pool::borrow);
+		assertBlocked(waiting);
+		pool.release(other);
+		assertSame(other, waiting.get(10, TimeUnit.SECONDS));
+		assertEquals(1, created.get());
+	}
+
+	@Test
+	public void testPrimaryIsReentrant() throws Exception {
+		final ReaderPool pool = pool(2);
+		assertSame(primary, pool.borrow());
+		// the owning thread gets the primary reader again, without blocking
+		assertSame(primary, pool.borrow());
+		assertSame(primary, pool.borrowPrimary());
+		assertEquals(0, created.get());
+
+		pool.release(primary);
+		pool.release(primary);
+		final Future<IFormatReader> waiting = threads.submit(
+			pool::borrowPrimary);
+		assertBlocked(waiting);
+		// only the last release returns it to the pool
+		pool.release(primary);
+		assertSame(primary, waiting.get(10, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testCreatesReadersOutsideLock() throws Exception {
+		final CountDownLatch creating = new CountDownLatch(1);
+		final CountDownLatch proceed = new CountDownLatch(1);
+		final ReaderPool pool = new ReaderPool(primary, () -> {
+			creating.countDown();
+			await(proceed);
+			return new StubReader();
+		}, 2);
+		assertSame(primary, pool.borrow());
+		final Future<IFormatReader> slow = threads.submit(pool::borrow);
+		try {
+			assertTrue(creating.await(10, TimeUnit.SECONDS));
+			// while the new reader initializes, the pool stays usable
+			pool.release(primary);
+			assertSame(primary, onOtherThread(pool::borrowPrimary));
+		}
+		finally {
+			proceed.countDown();
+		}
+		final IFormatReader reader = slow.get(10, TimeUnit.SECONDS);
+		assertNotSame(primary, reader);
+	}
+
+	@Test
+	public void testFailedCreationFreesSlot() throws Exception {
+		final AtomicInteger attempts = new AtomicInteger();
+		final ReaderPool pool = new ReaderPool(primary, () -> {
+			if (attempts.incrementAndGet() == 1) {
+				throw new loci.formats.FormatException("broken");
+			}
+			return new StubReader();
+		}, 2);
+		assertSame(primary, pool.borrow());
+		try {
+			onOtherThread(pool::borrow);
+			fail("Expected FormatException");
+		}
+		catch (final ExecutionException e) {
+			assertTrue(e.getCause() instanceof FormatException);
+		}
+		// the failed reader does not count towards the pool size
+		assertNotSame(primary, onOtherThread(pool::borrow));
+		assertEquals(2, attempts.get());
+	}
+
+	@Test
+	public void testCloseWhileBorrowed() throws Exception {
+		final ReaderPool pool = pool(3);
+		assertSame(primary, pool.borrow());
+		final StubReader idle = (StubReader) onOtherThread(pool::borrow);
+		final StubReader busy = (StubReader) onOtherThread(pool::borrow);
+		pool.release(idle);
+
+		pool.close();
+		assertTrue(idle.closed);
+		// borrowed readers are closed once released
+		assertFalse(busy.closed);
+		pool.release(busy);
+		assertTrue(busy.closed);
+		// the primary reader belongs to the metadata
+		pool.release(primary);
+		assertFalse(primary.closed);
+
+		// the pool remains usable
+		assertSame(primary, pool.borrow());
+		pool.release(primary);
+	}
+
+	// -- Helper methods --
+
+	private ReaderPool pool(final int maxSize) {
+		return new ReaderPool(primary, () -> {
+			created.incrementAndGet();
+			return new StubReader();
+		}, maxSize);
+	}
+
+	/** Borrows on another thread, so the primary reader is not reentered. */
+	private IFormatReader onOtherThread(final Borrow borrow)
+		throws InterruptedException, ExecutionException, TimeoutException
+	{
+		return threads.submit(borrow::borrow).get(10, TimeUnit.SECONDS);
+	}
+
+	private static void await(final CountDownLatch latch)
+		throws InterruptedIOException
+	{
+		try {
+			latch.await();
+		}
+		catch (final InterruptedException e) {
+			throw new InterruptedIOException();
+		}
+	}
+
+	private static void assertBlocked(final Future<?> future)
+		throws InterruptedException, ExecutionException
+	{
+		try {
+			future.get(100, TimeUnit.MILLISECONDS);
+			fail("Expected borrow to block");
+		}
+		catch (final TimeoutException e) {
+			// expected
+		}
+	}
+
+	// -- Helper classes --
+
+	private interface Borrow {
+
+		IFormatReader borrow() throws FormatException, IOException;
+	}
+
+	/** A reader recording whether it was closed. */
+	private static class StubReader extends FormatReader {
+
+		private volatile boolean closed;
+
+		public StubReader() {
+			super("stub", "stub");
+		}
+
+		@Override
+		public byte[] openBytes(final int no, final byte[] buf, final int x,
+			final int y, final int w, final int h)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void close(final boolean fileOnly) throws IOException {
+			closed = true;
+			super.close(fileOnly);
+		}
+	}
+
+}
@@ -0,0 +1,165 @@
+/*
+ * #%L
+ * SCIFIO Bio-Formats compatibility format.
+ * %%
+ * Copyright (C) 2013 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package io.scif.bf;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link SegmentedBuffer}, and the chunked layout in which
+ * {@link BioFormatsFormat.Reader#openLargePlane} fills one.
+ */
+public class SegmentedBufferTest {
+
+	@Test
+	public void testSegments() {
+		final SegmentedBuffer buffer = new SegmentedBuffer(25, 10);
+		assertEquals(25, buffer.size());
+		assertEquals(3, buffer.getSegmentCount());
+		assertEquals(10, buffer.getSegment(0).capacity());
+		assertEquals(10, buffer.getSegment(1).capacity());
+		assertEquals(5, buffer.getSegment(2).capacity());
+	}
+
+	@Test
+	public void testPutAndGetAcrossSegments() {
+		final SegmentedBuffer buffer = new SegmentedBuffer(25, 10);
+		final byte[] src = ramp(25);
+		// spans all three segments
+		buffer.put(3, src, 0, 20);
+		assertEquals(0, buffer.get(2));
+		assertEquals(7, buffer.get(9));
+		assertEquals(8, buffer.get(10));
+		assertEquals(20, buffer.get(22));
+
+		final byte[] dest = new byte[22];
+		buffer.get(2, dest, 1, 21);
+		final byte[] expected = new byte[22];
+		System.arraycopy(src, 0, expected, 2, 20);
+		assertArrayEquals(expected, dest);
+
+		// a segment view starts at its segment's first byte
+		final ByteBuffer segment = buffer.getSegment(1);
+		assertEquals(8, segment.get(0));
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testGetOutOfRange() {
+		new SegmentedBuffer(25, 10).get(25);
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testPutOutOfRange() {
+		new SegmentedBuffer(25, 10).put(20, new byte[6], 0, 6);
+	}
+
+	@Test
+	public void testChunkSizeAlignsToTileRows() {
+		// 1000x800 plane of 4-byte pixels in 64x32 tiles, chunks of up to 1 MiB:
+		// whole rows fit, 262 of them, rounded down to whole tile rows
+		final int[] size = BioFormatsFormat.Reader.chunkSize(1000, 800, 64, 32,
+			4, 1 << 20);
+		assertArrayEquals(new int[] { 1000, 256 }, size);
+	}
+
+	@Test
+	public void testChunkSizeAlignsToTileColumns() {
+		// a single row exceeds the budget: chunks are whole tile columns of it
+		final int[] size = BioFormatsFormat.Reader.chunkSize(100000, 10, 100, 1,
+			1, 1 << 16);
+		assertArrayEquals(new int[] { 65500, 1 }, size);
+		assertTrue(size[0] * size[1] <= 1 << 16);
+	}
+
+	@Test
+	public void testChunkSizeOfSmallRegion() {
+		final int[] size = BioFormatsFormat.Reader.chunkSize(100, 50, 64, 32, 4,
+			64 << 10);
+		assertArrayEquals(new int[] { 100, 50 }, size);
+	}
+
+	@Test
+	public void testChunkedRegionsReassemblePlane() {
+		// 13x7 plane of 2-byte pixels in 3 (non-interleaved) channels
+		final int width = 13, height = 7, pixelBytes = 2, blocks = 3;
+		final byte[] plane = ramp(width * height * pixelBytes * blocks);
+		final SegmentedBuffer buffer = new SegmentedBuffer(plane.length, 100);
+
+		final int[] size = BioFormatsFormat.Reader.chunkSize(width, height, 4, 2,
+			pixelBytes * blocks, 40);
+		for (int cy = 0; cy < height; cy += size[1]) {
+			final int h = Math.min(size[1], height - cy);
+			for (int cx = 0; cx < width; cx += size[0]) {
+				final int w = Math.min(size[0], width - cx);
+				final byte[] chunk = region(plane, width, height, pixelBytes, blocks,
+					cx, cy, w, h);
+				buffer.putRegion(chunk, cx, cy, w, h, width, height, pixelBytes,
+					blocks);
+			}
+		}
+
+		final byte[] result = new byte[plane.length];
+		buffer.get(0, result, 0, result.length);
+		assertArrayEquals(plane, result);
+	}
+
+	// -- Helper methods --
+
+	/** Copies a region out of a plane, as {@code IFormatReader#openBytes}. */
+	private static byte[] region(final byte[] plane, final int width,
+		final int height, final int pixelBytes, final int blocks, final int x,
+		final int y, final int w, final int h)
+	{
+		final byte[] region = new byte[w * h * pixelBytes * blocks];
+		final int rowBytes = w * pixelBytes;
+		for (int b = 0; b < blocks; b++) {
+			for (int row = 0; row < h; row++) {
+				System.arraycopy(plane, ((b * height + y + row) * width + x) *
+					pixelBytes, region, (b * h + row) * rowBytes, rowBytes);
+			}
+		}
+		return region;
+	}
+
+	private static byte[] ramp(final int length) {
+		final byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++) {
+			bytes[i] = (byte) (i + 1);
+		}
+		return bytes;
+	}
+
+}
@@ -0,0 +1,112 @@
+/*
+ * #%L
+ * SCIFIO Bio-Formats compatibility format.
+ * %%
+ * Copyright (C) 2013 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package io.scif.bf;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link ThumbnailCache}.
+ */
+public class ThumbnailCacheTest {
+
+	@Test
+	public void testCallersCannotCorruptCache() throws IOException {
+		final ThumbnailCache cache = new ThumbnailCache(4);
+		final byte[] thumb = { 1, 2, 3 };
+		cache.put(0, 5, thumb);
+		thumb[0] = 9;
+
+		final byte[] first = cache.get(0, 5);
+		assertArrayEquals(new byte[] { 1, 2, 3 }, first);
+		first[1] = 9;
+		final byte[] second = cache.get(0, 5);
+		assertArrayEquals(new byte[] { 1, 2, 3 }, second);
+		assertNotSame(first, second);
+		assertNull(cache.get(1, 5));
+	}
+
+	@Test
+	public void testOnDisk() throws IOException {
+		final File dir = Files.createTempDirectory("ThumbnailCacheTest").toFile();
+		final File dataset = File.createTempFile("ThumbnailCacheTest", ".tif");
+		try {
+			final ThumbnailCache cache = new ThumbnailCache(4, dir, dataset);
+			cache.put(1, 2, new byte[] { 4, 5, 6 });
+
+			// a new cache of the same dataset finds the thumbnail on disk
+			final ThumbnailCache reopened = new ThumbnailCache(4, dir, dataset);
+			final byte[] thumb = reopened.get(1, 2);
+			assertArrayEquals(new byte[] { 4, 5, 6 }, thumb);
+			thumb[0] = 9;
+			assertArrayEquals(new byte[] { 4, 5, 6 }, reopened.get(1, 2));
+		}
+		finally {
+			for (final File f : dir.listFiles()) {
+				f.delete();
+			}
+			dir.delete();
+			dataset.delete();
+		}
+	}
+
+	@Test
+	public void testOnDiskKeyedByOptions() throws IOException {
+		final File dir = Files.createTempDirectory("ThumbnailCacheTest").toFile();
+		final File dataset = File.createTempFile("ThumbnailCacheTest", ".tif");
+		try {
+			final ThumbnailCache cache = new ThumbnailCache(4, dir, dataset,
+				"groupFiles=true");
+			cache.put(1, 2, new byte[] { 4, 5, 6 });
+
+			// series 1 may be another image when opened with other options
+			assertNull(new ThumbnailCache(4, dir, dataset, "groupFiles=false").get(
+				1, 2));
+			assertArrayEquals(new byte[] { 4, 5, 6 }, new ThumbnailCache(4, dir,
+				dataset, "groupFiles=true").get(1, 2));
+		}
+		finally {
+			for (final File f : dir.listFiles()) {
+				f.delete();
+			}
+			dir.delete();
+			dataset.delete();
+		}
+	}
+
+}
@@ -0,0 +1,144 @@
+/*
+ * #%L
+ * SCIFIO Bio-Formats compatibility format.
+ * %%
+ * Copyright (C) 2013 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package io.scif.bf;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import io.scif.DefaultImageMetadata;
+import io.scif.ImageMetadata;
+
+import java.util.NoSuchElementException;
+
+import net.imagej.axis.Axes;
+import net.imagej.axis.CalibratedAxis;
+import net.imagej.axis.DefaultLinearAxis;
+import net.imglib2.Interval;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link TileIterator}.
+ */
+public class TileIteratorTest {
+
+	@Test
+	public void testTilesCoverPlaneOnce() {
+		final ImageMetadata imgMeta = metadata(10, 7, 3);
+		final TileIterator tiles = new TileIterator(imgMeta, 4, 3);
+		assertEquals(9, tiles.getTileCount());
+
+		final int[][] covered = new int[7][10];
+		int count = 0;
+		while (tiles.hasNext()) {
+			final Interval tile = tiles.next();
+			// every tile spans the whole channel axis
+			assertEquals(0, tile.min(2));
+			assertEquals(2, tile.max(2));
+			for (long y = tile.min(1); y <= tile.max(1); y++) {
+				for (long x = tile.min(0); x <= tile.max(0); x++) {
+					covered[(int) y][(int) x]++;
+				}
+			}
+			count++;
+		}
+		assertEquals(9, count);
+		for (final int[] row : covered) {
+			for (final int c : row) {
+				assertEquals(1, c);
+			}
+		}
+	}
+
+	@Test
+	public void testRowOrderAndClipping() {
+		final TileIterator tiles = new TileIterator(metadata(10, 7, 3), 4, 3);
+		assertBounds(new long[] { 0, 0, 0 }, new long[] { 3, 2, 2 }, tiles.next());
+		assertBounds(new long[] { 4, 0, 0 }, new long[] { 7, 2, 2 }, tiles.next());
+		// clipped at the right edge
+		assertBounds(new long[] { 8, 0, 0 }, new long[] { 9, 2, 2 }, tiles.next());
+		assertBounds(new long[] { 0, 3, 0 }, new long[] { 3, 5, 2 }, tiles.next());
+		for (int i = 0; i < 4; i++) {
+			tiles.next();
+		}
+		// clipped at the bottom right corner
+		assertBounds(new long[] { 8, 6, 0 }, new long[] { 9, 6, 2 }, tiles.next());
+		assertFalse(tiles.hasNext());
+		try {
+			tiles.next();
+			fail("Expected NoSuchElementException");
+		}
+		catch (final NoSuchElementException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testTileLargerThanPlane() {
+		final TileIterator tiles = new TileIterator(metadata(10, 7, 3), 64, 64);
+		assertEquals(1, tiles.getTileCount());
+		assertBounds(new long[] { 0, 0, 0 }, new long[] { 9, 6, 2 }, tiles.next());
+		assertFalse(tiles.hasNext());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidTileSize() {
+		new TileIterator(metadata(10, 7, 3), 0, 3);
+	}
+
+	// -- Helper methods --
+
+	/** Creates metadata of X by Y planes with C (planar) channels. */
+	private static ImageMetadata metadata(final long sizeX, final long sizeY,
+		final long sizeC)
+	{
+		final ImageMetadata imgMeta = new DefaultImageMetadata();
+		imgMeta.setAxes(new CalibratedAxis[] { new DefaultLinearAxis(Axes.X),
+			new DefaultLinearAxis(Axes.Y), new DefaultLinearAxis(Axes.CHANNEL) },
+			new long[] { sizeX, sizeY, sizeC });
+		imgMeta.setPlanarAxisCount(3);
+		return imgMeta;
+	}
+
+	private static void assertBounds(final long[] min, final long[] max,
+		final Interval interval)
+	{
+		final long[] actualMin = new long[interval.numDimensions()];
+		final long[] actualMax = new long[interval.numDimensions()];
+		interval.min(actualMin);
+		interval.max(actualMax);
+		assertArrayEquals(min, actualMin);
+		assertArrayEquals(max, actualMax);
+	}
+
+}
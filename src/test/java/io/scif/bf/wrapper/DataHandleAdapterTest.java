@@ -0,0 +1,318 @@
+/*
+ * #%L
+ * SCIFIO Bio-Formats compatibility format.
+ * %%
+ * Copyright (C) 2013 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package io.scif.bf.wrapper;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.Context;
+import org.scijava.io.handle.DataHandle;
+import org.scijava.io.handle.DataHandleService;
+import org.scijava.io.location.FileLocation;
+import org.scijava.io.location.Location;
+
+/**
+ * Tests the block-buffered and memory-mapped reads of
+ * {@link DataHandleAdapter}.
+ */
+public class DataHandleAdapterTest {
+
+	private static final int LENGTH = 100;
+
+	private static final int BLOCK_SIZE = 16;
+
+	private Context context;
+
+	private File file;
+
+	private byte[] data;
+
+	@Before
+	public void setUp() throws IOException {
+		context = new Context(DataHandleService.class);
+		data = new byte[LENGTH];
+		for (int i = 0; i < LENGTH; i++) {
+			data[i] = (byte) (i * 7 + 3);
+		}
+		file = File.createTempFile("DataHandleAdapterTest", ".bin");
+		Files.write(file.toPath(), data);
+	}
+
+	@After
+	public void tearDown() {
+		context.dispose();
+		file.delete();
+	}
+
+	@Test
+	public void testSequentialReadsAcrossBlocks() throws IOException {
+		try (final DataHandleAdapter stream = open()) {
+			stream.order(false);
+			final ByteBuffer expected = expected(ByteOrder.BIG_ENDIAN);
+			assertEquals(expected.get(0), stream.readByte());
+			assertEquals(expected.getShort(1), stream.readShort());
+			// the last of these ints straddles the first block boundary
+			for (int offset = 3; offset < 19; offset += 4) {
+				assertEquals(expected.getInt(offset), stream.readInt());
+			}
+			assertEquals(19, stream.getFilePointer());
+			assertEquals(expected.getLong(19), stream.readLong());
+			assertEquals(27, stream.getFilePointer());
+		}
+	}
+
+	@Test
+	public void testSeek() throws IOException {
+		try (final DataHandleAdapter stream = open()) {
+			stream.order(false);
+			final ByteBuffer expected = expected(ByteOrder.BIG_ENDIAN);
+			stream.seek(70);
+			assertEquals(expected.getInt(70), stream.readInt());
+			// back into an earlier block
+			stream.seek(5);
+			assertEquals(expected.getInt(5), stream.readInt());
+			// within the current block
+			stream.seek(2);
+			assertEquals(data[2] & 0xff, stream.read());
+			assertEquals(3, stream.getFilePointer());
+			assertEquals(3, stream.skipBytes(3));
+			assertEquals(data[6], stream.readByte());
+		}
+	}
+
+	@Test
+	public void testLargeReadBypassesBuffer() throws IOException {
+		try (final DataHandleAdapter stream = open()) {
+			stream.seek(1);
+			assertEquals(data[1], stream.readByte());
+			// partly served from the buffer, the rest read straight from the handle
+			final byte[] bytes = new byte[3 * BLOCK_SIZE];
+			stream.readFully(bytes);
+			assertArrayEquals(slice(2, bytes.length), bytes);
+			assertEquals(2 + bytes.length, stream.getFilePointer());
+			// the buffer must not serve stale bytes afterwards
+			assertEquals(data[2 + bytes.length], stream.readByte());
+		}
+	}
+
+	@Test
+	public void testTinyBlockSize() throws IOException {
+		// NB: a block must still hold the largest primitive value
+		try (final DataHandleAdapter stream = open(1)) {
+			stream.order(false);
+			final ByteBuffer expected = expected(ByteOrder.BIG_ENDIAN);
+			stream.seek(3);
+			assertEquals(expected.getShort(3), stream.readShort());
+			assertEquals(expected.getInt(5), stream.readInt());
+			assertEquals(expected.getLong(9), stream.readLong());
+			assertEquals(expected.getDouble(17), stream.readDouble(), 0);
+			assertEquals(data[25], stream.readByte());
+			final byte[] bytes = new byte[20];
+			stream.readFully(bytes);
+			assertArrayEquals(slice(26, 20), bytes);
+			assertEquals(46, stream.getFilePointer());
+		}
+	}
+
+	@Test
+	public void testByteOrder() throws IOException {
+		try (final DataHandleAdapter stream = open()) {
+			stream.order(true);
+			assertTrue(stream.isLittleEndian());
+			assertEquals(expected(ByteOrder.LITTLE_ENDIAN).getShort(0), stream
+				.readShort());
+			stream.order(false);
+			assertFalse(stream.isLittleEndian());
+			assertEquals(expected(ByteOrder.BIG_ENDIAN).getInt(2), stream
+				.readInt());
+			stream.order(true);
+			stream.seek(2);
+			assertEquals(expected(ByteOrder.LITTLE_ENDIAN).getInt(2), stream
+				.readInt());
+		}
+	}
+
+	@Test
+	public void testEndOfFile() throws IOException {
+		try (final DataHandleAdapter stream = open()) {
+			stream.seek(LENGTH - 2);
+			try {
+				stream.readInt();
+				fail("Expected EOFException");
+			}
+			catch (final EOFException e) {
+				// expected
+			}
+			stream.seek(LENGTH - 2);
+			final byte[] bytes = new byte[10];
+			assertEquals(2, stream.read(bytes));
+			assertEquals(LENGTH, stream.getFilePointer());
+			assertEquals(-1, stream.read());
+			assertEquals(-1, stream.read(bytes));
+			stream.seek(LENGTH - 2);
+			try {
+				stream.readFully(bytes);
+				fail("Expected EOFException");
+			}
+			catch (final EOFException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void testDirectBuffer() throws IOException {
+		try (final DataHandleAdapter stream = open()) {
+			stream.seek(10);
+			final ByteBuffer buf = ByteBuffer.allocateDirect(40);
+			assertEquals(40, stream.read(buf));
+			assertEquals(40, buf.position());
+			final byte[] bytes = new byte[40];
+			buf.flip();
+			buf.get(bytes);
+			assertArrayEquals(slice(10, 40), bytes);
+			// a short read at the end of the file
+			stream.seek(LENGTH - 4);
+			buf.clear();
+			assertEquals(4, stream.read(buf));
+			assertEquals(4, buf.position());
+			assertEquals(-1, stream.read(buf));
+		}
+	}
+
+	@Test
+	public void testMapped() throws IOException {
+		try (final DataHandleAdapter stream = openMapped(file)) {
+			stream.order(true);
+			final ByteBuffer expected = expected(ByteOrder.LITTLE_ENDIAN);
+			stream.seek(13);
+			assertEquals(expected.getInt(13), stream.readInt());
+			stream.order(false);
+			stream.seek(3);
+			assertEquals(expected(ByteOrder.BIG_ENDIAN).getLong(3), stream
+				.readLong());
+			final byte[] bytes = new byte[LENGTH];
+			stream.seek(0);
+			assertEquals(LENGTH, stream.read(bytes));
+			assertArrayEquals(data, bytes);
+			assertEquals(-1, stream.read());
+		}
+	}
+
+	@Test
+	public void testMappedSegmentBoundary() throws IOException {
+		// a sparse file spanning two mapped segments
+		final long boundary = DataHandleAdapter.SEGMENT_SIZE;
+		final File large = File.createTempFile("DataHandleAdapterTest", ".bin");
+		try {
+			try (final RandomAccessFile raf = new RandomAccessFile(large, "rw")) {
+				raf.setLength(boundary + 32);
+				raf.seek(boundary - 16);
+				raf.write(data, 0, 48);
+			}
+			try (final DataHandleAdapter stream = openMapped(large)) {
+				stream.order(false);
+				final ByteBuffer expected = expected(ByteOrder.BIG_ENDIAN);
+				// values straddling the boundary lie in the segments' overlap
+				stream.seek(boundary - 4);
+				assertEquals(expected.getLong(12), stream.readLong());
+				stream.seek(boundary - 1);
+				assertEquals(expected.getShort(15), stream.readShort());
+				// past the overlap, reads continue in the second segment
+				stream.seek(boundary + 8);
+				assertEquals(expected.getInt(24), stream.readInt());
+				// bulk reads cross the boundary
+				stream.seek(boundary - 16);
+				final byte[] bytes = new byte[48];
+				stream.readFully(bytes);
+				assertArrayEquals(slice(0, 48), bytes);
+				assertEquals(boundary + 32, stream.getFilePointer());
+				assertEquals(-1, stream.read());
+				// so do reads into direct buffers
+				stream.seek(boundary - 16);
+				final ByteBuffer buf = ByteBuffer.allocateDirect(64);
+				assertEquals(48, stream.read(buf));
+				buf.flip();
+				buf.get(bytes);
+				assertArrayEquals(slice(0, 48), bytes);
+				assertEquals(-1, stream.read(ByteBuffer.allocateDirect(8)));
+			}
+		}
+		finally {
+			large.delete();
+		}
+	}
+
+	// -- Helper methods --
+
+	private DataHandleAdapter open() throws IOException {
+		return open(BLOCK_SIZE);
+	}
+
+	private DataHandleAdapter open(final int blockSize) throws IOException {
+		final DataHandleService handles = context.service(
+			DataHandleService.class);
+		final DataHandle<Location> handle = handles.create(new FileLocation(
+			file));
+		return new DataHandleAdapter(handle, blockSize);
+	}
+
+	private DataHandleAdapter openMapped(final File f) throws IOException {
+		final DataHandleService handles = context.service(
+			DataHandleService.class);
+		return new DataHandleAdapter(handles.create(new FileLocation(f)), f);
+	}
+
+	private ByteBuffer expected(final ByteOrder order) {
+		return ByteBuffer.wrap(data).order(order);
+	}
+
+	private byte[] slice(final int offset, final int length) {
+		final byte[] bytes = new byte[length];
+		System.arraycopy(data, offset, bytes, 0, length);
+		return bytes;
+	}
+
+}